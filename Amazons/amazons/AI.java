@@ -1,9 +1,9 @@
 package amazons;
 
-
-import java.util.Iterator;
-
-import static java.lang.Math.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
 
 import static amazons.Piece.*;
 
@@ -13,26 +13,58 @@ import static amazons.Piece.*;
  */
 class AI extends Player {
 
-    /** A position magnitude indicating a win (for white if positive, black
-     *  if negative). */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
-    /** A magnitude greater than a normal value. */
-    private static final int INFTY = Integer.MAX_VALUE;
-
     /** A new AI with no piece or controller (intended to produce
      *  a template). */
     AI() {
-        this(null, null);
+        this(DEFAULT_HASH_MEGABYTES, 1, new TerritoryEvaluator());
+    }
+
+    /** A new AI template, as for AI(), whose players use a transposition
+     *  table of about HASHMEGABYTES megabytes, search on THREADS threads
+     *  at once, and evaluate leaf positions with Evaluators created from
+     *  EVALUATOR. */
+    AI(int hashMegabytes, int threads, Evaluator evaluator) {
+        this(hashMegabytes, threads, evaluator, null, false);
+    }
+
+    /** A new AI template, as for AI(HASHMEGABYTES, THREADS, EVALUATOR),
+     *  whose players play the moves in BOOK (if not null) in the
+     *  positions it covers without searching, and, iff PONDER, keep
+     *  searching while their opponents are choosing moves. */
+    AI(int hashMegabytes, int threads, Evaluator evaluator,
+       OpeningBook book, boolean ponder) {
+        this(hashMegabytes, threads, evaluator, book, ponder, true);
     }
 
-    /** A new AI playing PIECE under control of CONTROLLER. */
-    AI(Piece piece, Controller controller) {
+    /** A new AI template, as for AI(HASHMEGABYTES, THREADS, EVALUATOR,
+     *  BOOK, PONDER), whose searches use PVS and aspiration windows iff
+     *  PVS, and otherwise plain alpha-beta (see Search). */
+    AI(int hashMegabytes, int threads, Evaluator evaluator,
+       OpeningBook book, boolean ponder, boolean pvs) {
+        super(null, null);
+        _hashMegabytes = hashMegabytes;
+        _threads = Math.max(1, threads);
+        _evaluator = evaluator;
+        _book = book;
+        _ponder = ponder;
+        _pvs = pvs;
+    }
+
+    /** A new AI playing PIECE under control of CONTROLLER, with the same
+     *  settings as TEMPLATE. */
+    private AI(Piece piece, Controller controller, AI template) {
         super(piece, controller);
+        _hashMegabytes = template._hashMegabytes;
+        _threads = template._threads;
+        _evaluator = template._evaluator;
+        _book = template._book;
+        _ponder = template._ponder;
+        _pvs = template._pvs;
     }
 
     @Override
     Player create(Piece piece, Controller controller) {
-        return new AI(piece, controller);
+        return new AI(piece, controller, this);
     }
 
     @Override
@@ -42,137 +74,284 @@ class AI extends Player {
         return move.toString();
     }
 
+    /** Return the counts of the work done by my searches (all of them,
+     *  if I use several threads) in choosing my current move, as of their
+     *  last completed iterations, or, between moves, in choosing my last
+     *  move.  They are all 0 for a move from my book or the endgame
+     *  solver, which take no search.  May be called from any thread, as
+     *  by a display polling during a search; each call returns a new
+     *  copy, which never changes. */
+    @Override
+    SearchStats stats() {
+        if (!_searching) {
+            return _stats;
+        }
+        SearchStats result = new SearchStats();
+        for (Search search : _searches) {
+            result.add(search.snapshot());
+        }
+        return result;
+    }
+
+    /** If I ponder, start doing so after each of my moves, and when my
+     *  opponent replies, promote the ponder search to the search for my
+     *  next move if it was searching the position MOVE produced, and
+     *  otherwise cancel it. */
+    @Override
+    void moveMade(Move move) {
+        if (!_ponder) {
+            return;
+        }
+        Board b = board();
+        if (b.turn() == _myPiece) {
+            if (_ponderSearch != null && b.hash() == _ponderHash) {
+                startClock(b);
+                _searches[0].setDeadlines(_softDeadline, _hardDeadline);
+                _promoted = true;
+            } else {
+                stopPondering();
+            }
+        } else if (b.winner() == null) {
+            stopPondering();
+            startPondering(b);
+        }
+    }
+
+    /** Stop pondering. */
+    @Override
+    void stopThinking() {
+        stopPondering();
+    }
+
+    /** Return the reply by my opponent whose result my ponder search is
+     *  searching, or null if there is no ponder search in progress or it
+     *  is searching the position after my own move. */
+    Move ponderReply() {
+        return _ponderSearch == null ? null : _ponderReply;
+    }
+
     /** Return a move for me from the current position, assuming there
-     *  is a move. */
+     *  is a move.  Searches to successively greater depths until the
+     *  time budget for this move runs out, returning the best move from
+     *  the deepest search completed.  With more than one thread, helper
+     *  searches run alongside the main one, sharing its transposition
+     *  table (so-called Lazy SMP), and the deepest result wins.  Positions
+     *  in my opening book are answered from it at once, as are endgames
+     *  in which the queens are separated, if they can be solved
+     *  quickly.  If my ponder search was promoted, it continues as my
+     *  main search. */
     private Move findMove() {
-        Board b = new Board(board());
-        if (_myPiece == WHITE) {
-            findMove(b, maxDepth(b), true, 1, -INFTY, INFTY);
-        } else {
-            findMove(b, maxDepth(b), true, -1, -INFTY, INFTY);
-        }
-        return _lastFoundMove;
-    }
-
-    /** The move found by the last call to one of the ...FindMove methods
-     *  below. */
-    private Move _lastFoundMove;
-
-    /** Find a move from position BOARD and return its value, recording
-     *  the move found in _lastFoundMove iff SAVEMOVE. The move
-     *  should have maximal value or have value > BETA if SENSE==1,
-     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
-     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
-     *  of the board value and does not set _lastMoveFound. */
-    private int findMove(Board board, int depth, boolean saveMove, int sense,
-                         int alpha, int beta) {
-        if (depth == 0 || board.winner() != null) {
-            return staticScore(board);
-        }
-        Iterator<Move> allMoves = board.legalMoves();
-        Move value = null;
-        int bestValue;
-        if (sense == 1) {
-            bestValue = -INFTY;
-        } else {
-            bestValue = INFTY;
-        }
-        if (sense == 1) {
-            while (allMoves.hasNext()) {
-                Move next = allMoves.next();
-                board.makeMove(next);
-                int response = findMove(board, depth - 1, false, 0 - sense,
-                        alpha, beta);
-                board.undo();
-                if (response >= bestValue) {
-                    value = next;
-                    bestValue = response;
-                    alpha = Math.max(alpha, response);
-                    if (beta <= alpha) {
-                        break;
-                    }
-                }
+        Board b = board();
+        _stats = new SearchStats();
+        boolean promoted =
+            _promoted && _ponderSearch != null && b.hash() == _ponderHash;
+        if (!promoted) {
+            stopPondering();
+        }
+        if (_book != null) {
+            Move move = _book.lookup(b);
+            if (move != null) {
+                stopPondering();
+                return move;
             }
-
-        } else if (sense == -1) {
-            while (allMoves.hasNext()) {
-                Move next = allMoves.next();
-                board.makeMove(next);
-                int response = findMove(board, depth - 1, saveMove, 0 - sense,
-                        alpha, beta);
-                board.undo();
-                if (response <= bestValue) {
-                    value = next;
-                    bestValue = response;
-                    beta = Math.min(beta, response);
-                    if (beta <= alpha) {
-                        break;
-                    }
-                }
+        }
+        if (_endgame == null) {
+            _endgame = new EndgameSolver();
+        }
+        if (b.numMoves() >= Search.ENDGAME_MIN_MOVES
+            && _endgame.separated(b)) {
+            int move = _endgame.bestMove(b, ENDGAME_BUDGET);
+            if (move != 0) {
+                stopPondering();
+                return Move.mv(move);
             }
-
         }
-        if (saveMove) {
-            _lastFoundMove = value;
+        createSearches();
+        if (!promoted) {
+            _table.newSearch();
+            startClock(b);
+            _searches[0].setup(b, _hardDeadline, 0, _threads);
+        }
+        for (int i = 1; i < _threads; i += 1) {
+            _searches[i].setup(b, _hardDeadline, i, _threads);
         }
+        Future<?>[] helpers = new Future<?>[_threads];
+        for (int i = 1; i < _threads; i += 1) {
+            Search helper = _searches[i];
+            helpers[i] = _helpers.submit(() -> helper.run(Long.MAX_VALUE));
+        }
+        _searching = true;
+        if (promoted) {
+            await(_ponderSearch);
+            _ponderSearch = null;
+            _promoted = false;
+        } else {
+            _searches[0].run(_softDeadline);
+        }
+        Search best = _searches[0];
+        SearchStats stats = new SearchStats(best.stats());
+        for (int i = 1; i < _threads; i += 1) {
+            _searches[i].stop();
+            await(helpers[i]);
+            stats.add(_searches[i].stats());
+            if (_searches[i].completedDepth() > best.completedDepth()) {
+                best = _searches[i];
+            }
+        }
+        _stats = stats;
+        _searching = false;
+        return Move.mv(best.bestMove());
+    }
 
-        return bestValue;
+    /** Create my transposition table, searches, and threads, if that has
+     *  not yet been done. */
+    private void createSearches() {
+        if (_searches != null) {
+            return;
+        }
+        _table = new TranspositionTable(_hashMegabytes);
+        _searches = new Search[_threads];
+        for (int i = 0; i < _threads; i += 1) {
+            _searches[i] = new Search(_table, _evaluator.create(), _pvs);
+        }
+        if (_threads > 1) {
+            _helpers = Executors.newFixedThreadPool(_threads - 1, r -> {
+                Thread thread = new Thread(r, "amazons-search");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (_ponder) {
+            _ponderer = Executors.newSingleThreadExecutor(r -> {
+                Thread thread = new Thread(r, "amazons-ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
     }
 
-    /** Return a heuristically determined maximum search depth
-     *  based on characteristics of BOARD. */
-    private int maxDepth(Board board) {
-        int N = board.numMoves();
-        if (N < FOURTH_LIMIT) {
-            return 1;
-        } else if (N < FIRST_LIMIT) {
-            return 2;
-        } else if (N < SECOND_LIMIT) {
-            return 3;
-        } else if (N < THIRD_LIMIT) {
-            return 4;
+    /** Start my main search pondering the position after my move on
+     *  BOARD.  It searches the position after the reply the last search
+     *  expected, if that is in the transposition table, and otherwise the
+     *  position after my move itself, which at least fills the table. */
+    private void startPondering(Board board) {
+        createSearches();
+        Board next = new Board(board);
+        Move reply =
+            Move.mv(TranspositionTable.move(_table.probe(board.hash())));
+        if (reply != null && next.get(reply.from()) == next.turn()
+            && next.isLegal(reply)) {
+            next.makeMove(reply);
         } else {
-            return 5;
+            reply = null;
         }
-
+        _ponderReply = reply;
+        _table.newSearch();
+        _searches[0].setup(next, Long.MAX_VALUE, 0, 1);
+        _ponderHash = next.hash();
+        _ponderSearch = _ponderer.submit(_searches[0]::ponder);
     }
 
+    /** Stop any ponder search and wait for it to finish. */
+    private void stopPondering() {
+        if (_ponderSearch != null) {
+            _searches[0].stop();
+            await(_ponderSearch);
+            _ponderSearch = null;
+        }
+        _promoted = false;
+    }
 
-    /** Return a heuristic value for BOARD. */
-    private int staticScore(Board board) {
-        Piece winner = board.winner();
-        if (winner == BLACK) {
-            return -WINNING_VALUE;
-        } else if (winner == WHITE) {
-            return WINNING_VALUE;
+    /** Wait for the search TASK to complete. */
+    private static void await(Future<?> task) {
+        try {
+            task.get();
+        } catch (InterruptedException | ExecutionException excp) {
+            throw new IllegalStateException(excp);
         }
+    }
 
-        int whites = 0;
-        int blacks = 0;
-        Iterator<Move> allWhiteMoves = board.legalMoves(WHITE);
-        Iterator<Move> allBlackMoves = board.legalMoves(BLACK);
+    /** Set the deadlines for a search from BOARD according to my
+     *  moveBudget, never allowing more than a fraction of the time left
+     *  on my clock. */
+    private void startClock(Board board) {
+        long now = System.nanoTime();
+        long left = _controller.timeLeft(_myPiece);
+        long budget = moveBudget(board);
+        _softDeadline = now + softLimit(budget);
+        _hardDeadline = now + hardLimit(budget, left);
+    }
 
-        while (allBlackMoves.hasNext()) {
-            allBlackMoves.next();
-            blacks += 1;
-        }
+    /** Return the time in nanoseconds after which a search with a budget
+     *  of BUDGET milliseconds should start no new iterations. */
+    static long softLimit(long budget) {
+        return budget * 1_000_000 / 2;
+    }
 
-        while (allWhiteMoves.hasNext()) {
-            allWhiteMoves.next();
-            whites += 1;
+    /** Return the time in nanoseconds after which a search with a budget
+     *  of BUDGET milliseconds must stop, when LEFT milliseconds are left
+     *  on the clock (or there is no clock, if LEFT is negative). */
+    static long hardLimit(long budget, long left) {
+        long hard = HARD_LIMIT_FACTOR * budget;
+        if (left >= 0) {
+            hard = Math.min(hard, left / 4);
         }
-        return whites - blacks;
+        return hard * 1_000_000;
     }
 
+    /** Time at which the current iterative deepening stops starting new
+     *  iterations (half the soft budget, since each iteration takes
+     *  much longer than the last), and at which it abandons the current
+     *  one, in System.nanoTime() units. */
+    private long _softDeadline, _hardDeadline;
+
+    /** Default size of the transposition table in megabytes. */
+    static final int DEFAULT_HASH_MEGABYTES = 16;
 
-    /**A limit for maxDepth.*/
-    public static final int FIRST_LIMIT = 100;
-    /**A limit for maxDepth.*/
-    public static final int SECOND_LIMIT = 150;
-    /**A limit for maxDepth.*/
-    public static final int THIRD_LIMIT = 200;
-    /**A limit for maxDepth.*/
-    public static final int FOURTH_LIMIT = 50;
+    /** Size of my transposition table in megabytes. */
+    private final int _hashMegabytes;
+    /** Number of threads I search on. */
+    private final int _threads;
+    /** Template for my searches' leaf evaluators. */
+    private final Evaluator _evaluator;
+    /** My opening book, or null if I have none. */
+    private final OpeningBook _book;
+    /** Solver for positions in which the queens are separated, created
+     *  on first use. */
+    private EndgameSolver _endgame;
+    /** Transposition table shared by my searches, created on first
+     *  use. */
+    private TranspositionTable _table;
+    /** My main search, followed by any helpers, created on first use. */
+    private Search[] _searches;
+    /** Threads running helper searches, or null if there are none. */
+    private ExecutorService _helpers;
+    /** True iff my searches use PVS. */
+    private final boolean _pvs;
+    /** True iff I search during my opponent's turns. */
+    private final boolean _ponder;
+    /** Thread running my ponder searches, or null if I do not ponder. */
+    private ExecutorService _ponderer;
+    /** The ponder search in progress, or null if there is none. */
+    private Future<?> _ponderSearch;
+    /** Hash of the position being pondered. */
+    private long _ponderHash;
+    /** The reply anticipated by the ponder search, or null if it is
+     *  searching the position after my move. */
+    private Move _ponderReply;
+    /** True iff the ponder search has become the search for my next
+     *  move. */
+    private boolean _promoted;
+    /** Counts of the work done choosing my last move. */
+    private volatile SearchStats _stats = new SearchStats();
+    /** True while my searches are choosing a move, when stats() reports
+     *  their progress rather than _stats.  Set only once they are set
+     *  up, so that reading it first makes them safe to read. */
+    private volatile boolean _searching;
 
+    /** Endgame solver nodes allowed when choosing a move. */
+    private static final int ENDGAME_BUDGET = 1 << 18;
+    /** Ratio of the hard to the soft time limit for a move. */
+    private static final int HARD_LIMIT_FACTOR = 2;
 
 }
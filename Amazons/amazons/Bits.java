@@ -0,0 +1,213 @@
+package amazons;
+
+/** Utilities for sets of Squares represented as 128-bit masks.  A set
+ *  is held in two longs, a low word LO containing the squares with
+ *  indices 0-63 and a high word HI containing any squares with higher
+ *  indices (in its low-order bits).  Bit k of the 128-bit value is set iff
+ *  the Square whose index() is k is in the set.
+ *  @author Eileen Wang
+ */
+final class Bits {
+
+    /** Number of squares. */
+    static final int SQUARES = Board.SIZE * Board.SIZE;
+
+    /** All squares in the low and high words. */
+    static final long
+        ALL_LO = SQUARES >= 64 ? -1L : (1L << SQUARES) - 1,
+        ALL_HI = SQUARES > 64 ? (1L << (SQUARES - 64)) - 1 : 0;
+
+    /** Return the low word of the set containing only the square with
+     *  index INDEX. */
+    static long lo(int index) {
+        return index < 64 ? 1L << index : 0L;
+    }
+
+    /** Return the high word of the set containing only the square with
+     *  index INDEX. */
+    static long hi(int index) {
+        return index < 64 ? 0L : 1L << (index - 64);
+    }
+
+    /** Return true iff the set LO, HI contains the square with index
+     *  INDEX. */
+    static boolean contains(long lo, long hi, int index) {
+        if (index < 64) {
+            return (lo & (1L << index)) != 0;
+        }
+        return (hi & (1L << (index - 64))) != 0;
+    }
+
+    /** Return the number of squares in the set LO, HI. */
+    static int count(long lo, long hi) {
+        return Long.bitCount(lo) + Long.bitCount(hi);
+    }
+
+    /** Return the index of the lowest-numbered square in the non-empty
+     *  set LO, HI. */
+    static int first(long lo, long hi) {
+        if (lo != 0) {
+            return Long.numberOfTrailingZeros(lo);
+        }
+        return 64 + Long.numberOfTrailingZeros(hi);
+    }
+
+    /** Return the index of the square in the set LO, HI that has K
+     *  squares of lower index in the set.  Requires 0 <= K < count(LO,
+     *  HI). */
+    static int nth(long lo, long hi, int k) {
+        int inLo = Long.bitCount(lo);
+        if (k >= inLo) {
+            return 64 + nth(hi, 0, k - inLo);
+        }
+        for (; k > 0; k -= 1) {
+            lo &= lo - 1;
+        }
+        return Long.numberOfTrailingZeros(lo);
+    }
+
+    /** Return the low word of the set of squares adjacent (orthogonally
+     *  or diagonally) to the square with index INDEX. */
+    static long neighborsLo(int index) {
+        return NEIGHBORS_LO[index];
+    }
+
+    /** Return the high word of the set of squares adjacent (orthogonally
+     *  or diagonally) to the square with index INDEX. */
+    static long neighborsHi(int index) {
+        return NEIGHBORS_HI[index];
+    }
+
+    /** Return the low word of the set of squares adjacent to some square
+     *  in the set LO, HI. */
+    static long adjacentLo(long lo, long hi) {
+        long r = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            r |= shiftLo(lo, hi, dir);
+        }
+        return r;
+    }
+
+    /** Return the high word of the set of squares adjacent to some square
+     *  in the set LO, HI. */
+    static long adjacentHi(long lo, long hi) {
+        long r = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            r |= shiftHi(lo, hi, dir);
+        }
+        return r;
+    }
+
+    /** Return the low word of the set LO, HI with every square moved one
+     *  step in direction DIR (as for Square.queenMove).  Squares moved
+     *  off the board disappear. */
+    static long shiftLo(long lo, long hi, int dir) {
+        int k = DELTA[dir];
+        long r;
+        if (k > 0) {
+            r = lo << k;
+        } else {
+            r = (lo >>> -k) | (hi << (64 + k));
+        }
+        return r & MASK_LO[dir];
+    }
+
+    /** Return the high word of the set LO, HI with every square moved one
+     *  step in direction DIR (as for Square.queenMove).  Squares moved
+     *  off the board disappear. */
+    static long shiftHi(long lo, long hi, int dir) {
+        int k = DELTA[dir];
+        long r;
+        if (k > 0) {
+            r = (hi << k) | (lo >>> (64 - k));
+        } else {
+            r = hi >>> -k;
+        }
+        return r & MASK_HI[dir];
+    }
+
+    /** Set RESULT[0] and RESULT[1] to the low and high words of the set of
+     *  squares reachable by an unblocked queen move from the square with
+     *  index FROM, where the squares in EMPTYLO, EMPTYHI are the only ones
+     *  a queen may pass through or land on. */
+    static void queenReach(int from, long emptyLo, long emptyHi,
+                           long[] result) {
+        long startLo = lo(from), startHi = hi(from);
+        long rLo, rHi;
+        rLo = rHi = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            long sLo = startLo, sHi = startHi;
+            while (true) {
+                long nLo = shiftLo(sLo, sHi, dir) & emptyLo;
+                long nHi = shiftHi(sLo, sHi, dir) & emptyHi;
+                if ((nLo | nHi) == 0) {
+                    break;
+                }
+                rLo |= nLo;
+                rHi |= nHi;
+                sLo = nLo;
+                sHi = nHi;
+            }
+        }
+        result[0] = rLo;
+        result[1] = rHi;
+    }
+
+    /** Return true iff TO is reachable by an unblocked queen move in
+     *  direction DIR from FROM, where the squares in EMPTYLO, EMPTYHI are
+     *  the only ones a queen may pass through or land on. */
+    static boolean slidesTo(int from, int to, int dir,
+                            long emptyLo, long emptyHi) {
+        long sLo = lo(from), sHi = hi(from);
+        while (true) {
+            long nLo = shiftLo(sLo, sHi, dir) & emptyLo;
+            long nHi = shiftHi(sLo, sHi, dir) & emptyHi;
+            if ((nLo | nHi) == 0) {
+                return false;
+            } else if (contains(nLo, nHi, to)) {
+                return true;
+            }
+            sLo = nLo;
+            sHi = nHi;
+        }
+    }
+
+    /** Change in square index for one step in each direction. */
+    private static final int[] DELTA = new int[8];
+    /** Masks applied after a shift in each direction, removing squares
+     *  that wrapped around from one edge of the board to the other, and
+     *  bits beyond the last square. */
+    private static final long[] MASK_LO = new long[8], MASK_HI = new long[8];
+    /** Neighbor sets of each square (see neighborsLo, neighborsHi). */
+    private static final long[]
+        NEIGHBORS_LO = new long[SQUARES], NEIGHBORS_HI = new long[SQUARES];
+
+    static {
+        Square origin = Square.sq(1, 1);
+        for (int dir = 0; dir < 8; dir += 1) {
+            Square next = origin.queenMove(dir, 1);
+            int dcol = next.col() - origin.col();
+            DELTA[dir] = next.index() - origin.index();
+            long mLo, mHi;
+            mLo = mHi = 0;
+            for (int i = 0; i < SQUARES; i += 1) {
+                int col = Square.sq(i).col();
+                if ((dcol > 0 && col == 0)
+                    || (dcol < 0 && col == Board.SIZE - 1)) {
+                    continue;
+                }
+                mLo |= lo(i);
+                mHi |= hi(i);
+            }
+            MASK_LO[dir] = mLo;
+            MASK_HI[dir] = mHi & ALL_HI;
+        }
+        for (int i = 0; i < SQUARES; i += 1) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                NEIGHBORS_LO[i] |= shiftLo(lo(i), hi(i), dir);
+                NEIGHBORS_HI[i] |= shiftHi(lo(i), hi(i), dir);
+            }
+        }
+    }
+
+}
@@ -3,10 +3,8 @@ package amazons;
 
 
 
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
+import java.util.Random;
 
 import static amazons.Piece.*;
 
@@ -17,14 +15,44 @@ import static amazons.Piece.*;
  */
 class Board {
 
-    /** The number of squares on a side of the board. */
-    static final int SIZE = 10;
-    /**A 2D array representing a game board.*/
-    private Piece [][] board;
+    /** The system property that selects the board size. */
+    static final String SIZE_PROPERTY = "amazons.size";
+    /** The usual number of squares on a side of the board. */
+    static final int DEFAULT_SIZE = 10;
+    /** The least and greatest sizes allowed.  The largest board must
+     *  fit in the 128-bit sets of Bits and the 7-bit square fields of
+     *  packed moves, so boards larger than 11x11 are not supported:
+     *  widening those would cost every board operation, and so every
+     *  game on the usual board, for the sake of experiments. */
+    static final int MIN_SIZE = 4, MAX_SIZE = 11;
+    /** The number of squares on a side of the board: DEFAULT_SIZE, unless
+     *  the system property SIZE_PROPERTY gives another size between
+     *  MIN_SIZE and MAX_SIZE.  The property is read once, when this class
+     *  is loaded, and all boards in a program have the same size, since
+     *  the tables describing the board's geometry (in Square, Move, and
+     *  Bits) are computed from it once and for all.  Being a static final
+     *  field, it costs the compiled code no more than a literal.  Main
+     *  and Tournament check the size they are given before setting the
+     *  property. */
+    static final int SIZE = boardSize();
+    /** Occupancy masks (see Bits) of the squares holding each kind of
+     *  Piece, indexed by Piece.ordinal().  The entries for EMPTY are
+     *  unused. */
+    private final long[] _lo = new long[4], _hi = new long[4];
+    /** The largest number of legal moves possible in any position: four
+     *  queens, each with at most maxReach() destinations, from each of
+     *  which there are at most as many spear throws. */
+    static final int MAX_MOVES = 4 * maxReach() * maxReach();
     /**Number of moves in the game.*/
     private int numMoves;
-    /**ArryaList containing all moves in the game.*/
-    private List<Move> moves = new ArrayList<>();
+    /** Undo records for the moves in the game, UNDO_RECORD ints apiece,
+     *  in _history[0 .. UNDO_RECORD * numMoves - 1].  Each holds the move,
+     *  packed as for Move.pack, followed by the high and low halves of
+     *  the hash of the position before it was made.  A game cannot last
+     *  longer than there are squares, so the stack never overflows. */
+    private int[] _history = new int[UNDO_RECORD * SIZE * SIZE];
+    /** The number of ints in one undo record. */
+    private static final int UNDO_RECORD = 3;
 
     /** Initializes a game board with SIZE squares on a side in the
      *  initial position. */
@@ -37,36 +65,133 @@ class Board {
         copy(model);
     }
 
-    /** Copies MODEL into me. */
+    /** Copies MODEL into me.  My history is my own: later moves and
+     *  undos on either board do not affect the other.  Allocates
+     *  nothing. */
     void copy(Board model) {
-        init();
-        this.moves = model.moves;
+        if (model == this) {
+            return;
+        }
+        System.arraycopy(model._history, 0, _history, 0,
+                         UNDO_RECORD * model.numMoves);
         this.numMoves = model.numMoves;
         this._turn = model._turn;
         this._winner = model._winner;
-        for (int x = 0; x < SIZE; x++) {
-            for (int y = 0; y < SIZE; y++) {
-                this.board[y][x] = model.board[y][x];
+        System.arraycopy(model._lo, 0, _lo, 0, _lo.length);
+        System.arraycopy(model._hi, 0, _hi, 0, _hi.length);
+        this._hash = model._hash;
+        this._trappedLo = model._trappedLo;
+        this._trappedHi = model._trappedHi;
+    }
+
+    /** Return a compact snapshot of this board, from which restore can
+     *  recreate it on any Board, including its history.  The snapshot is
+     *  a single array: the occupancy masks, hash, trapped queens, side to
+     *  move, and move count in its first SNAPSHOT_HEADER entries, followed
+     *  by the undo records packed two ints to a long. */
+    long[] snapshot() {
+        int records = UNDO_RECORD * numMoves;
+        long[] result = new long[SNAPSHOT_HEADER + (records + 1) / 2];
+        for (int p = WHITE_INDEX; p <= SPEAR_INDEX; p += 1) {
+            result[2 * (p - WHITE_INDEX)] = _lo[p];
+            result[2 * (p - WHITE_INDEX) + 1] = _hi[p];
+        }
+        result[6] = _hash;
+        result[7] = _trappedLo;
+        result[8] = _trappedHi;
+        result[9] = ((long) numMoves << 32) | _turn.ordinal();
+        for (int i = 0; i < records; i += 1) {
+            result[SNAPSHOT_HEADER + i / 2] |=
+                (_history[i] & 0xffffffffL) << (32 * (i % 2));
+        }
+        return result;
+    }
+
+    /** Set me to the position recorded in SNAPSHOT, as returned by
+     *  snapshot().  Allocates nothing. */
+    void restore(long[] snapshot) {
+        for (int p = WHITE_INDEX; p <= SPEAR_INDEX; p += 1) {
+            _lo[p] = snapshot[2 * (p - WHITE_INDEX)];
+            _hi[p] = snapshot[2 * (p - WHITE_INDEX) + 1];
+        }
+        _hash = snapshot[6];
+        _trappedLo = snapshot[7];
+        _trappedHi = snapshot[8];
+        _turn = (int) snapshot[9] == WHITE_INDEX ? WHITE : BLACK;
+        numMoves = (int) (snapshot[9] >>> 32);
+        int records = UNDO_RECORD * numMoves;
+        for (int i = 0; i < records; i += 1) {
+            _history[i] =
+                (int) (snapshot[SNAPSHOT_HEADER + i / 2] >>> (32 * (i % 2)));
+        }
+        _winner = EMPTY;
+    }
+
+    /** Return the board size selected by SIZE_PROPERTY. */
+    private static int boardSize() {
+        int size = Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE);
+        if (size < MIN_SIZE || size > MAX_SIZE) {
+            throw new IllegalStateException(
+                String.format("board size must be between %d and %d",
+                              MIN_SIZE, MAX_SIZE));
+        }
+        return size;
+    }
+
+    /** Return the largest number of squares a queen can reach from any
+     *  square of an empty board (4 * SIZE - 5 for even sizes, and 4 *
+     *  SIZE - 4 for odd ones, from the central squares). */
+    private static int maxReach() {
+        int result = 0, last = SIZE - 1;
+        for (int col = 0; col < SIZE; col += 1) {
+            for (int row = 0; row < SIZE; row += 1) {
+                int reach = 2 * last
+                    + Math.min(col, row) + Math.min(last - col, last - row)
+                    + Math.min(col, last - row) + Math.min(last - col, row);
+                result = Math.max(result, reach);
             }
         }
+        return result;
     }
 
-    /** Clears the board to the initial position. */
+    /** The number of entries preceding the undo records in a
+     *  snapshot. */
+    private static final int SNAPSHOT_HEADER = 10;
+
+    /** Clears the board to the initial position.  On the standard board,
+     *  White's queens are on a4, d1, g1, and j4, and Black's on a7, d10,
+     *  g10, and j7; boards of other sizes place them in the same pattern,
+     *  OFFSET squares in from the corners. */
     void init() {
-        board = new Piece[SIZE][SIZE];
-        put(WHITE, 0, 3);
-        put(WHITE, 3, 0);
-        put(WHITE, 6, 0);
-        put(WHITE, 9, 3);
-        put(BLACK, 0, 6);
-        put(BLACK, 3, 9);
-        put(BLACK, 6, 9);
-        put(BLACK, 9, 6);
+        for (Piece p : Piece.values()) {
+            _lo[p.ordinal()] = _hi[p.ordinal()] = 0;
+        }
+        _hash = 0;
+        _trappedLo = _trappedHi = 0;
+        int last = SIZE - 1;
+        put(WHITE, 0, OFFSET);
+        put(WHITE, OFFSET, 0);
+        put(WHITE, last - OFFSET, 0);
+        put(WHITE, last, OFFSET);
+        put(BLACK, 0, last - OFFSET);
+        put(BLACK, OFFSET, last);
+        put(BLACK, last - OFFSET, last);
+        put(BLACK, last, last - OFFSET);
         _turn = WHITE;
         _winner = EMPTY;
+        numMoves = 0;
     }
 
 
+    /** Return a 64-bit Zobrist hash of the current position: the
+     *  exclusive or of a random key for each occupied square and its
+     *  contents, and of a key for BLACK being on move.  It is maintained
+     *  incrementally by put, makeMove, and undo, and so costs nothing to
+     *  query. */
+    long hash() {
+        return _hash;
+    }
+
     /** Return the Piece whose move it is (WHITE or BLACK). */
     Piece turn() {
         return _turn;
@@ -78,10 +203,16 @@ class Board {
         return numMoves;
     }
 
+    /** Return move number K (numbering from 0) of the game, packed as for
+     *  Move.pack.  Requires 0 <= K < numMoves(). */
+    int move(int k) {
+        return _history[UNDO_RECORD * k];
+    }
+
     /** Return the winner in the current position, or null if the game is
      *  not yet finished. */
     Piece winner() {
-        if (legalMoves().hasNext()) {
+        if (hasAnyMove(_turn)) {
             return null;
         } else {
             _winner = _turn.opponent();
@@ -89,15 +220,68 @@ class Board {
         }
     }
 
+    /** Return true iff SIDE has a legal move.  This is so iff one of its
+     *  queens has an empty neighbor, since it may step there and throw
+     *  its spear back to where it came from.  Takes constant time, since
+     *  the trapped queens are tracked as the board changes. */
+    boolean hasAnyMove(Piece side) {
+        return ((_lo[side.ordinal()] & ~_trappedLo)
+                | (_hi[side.ordinal()] & ~_trappedHi)) != 0;
+    }
+
+    /** Return the number of legal moves SIDE has in the current position
+     *  (regardless of whose turn it is), without generating them: the
+     *  sum, over the destinations of each of SIDE's queens, of the
+     *  number of squares reachable from that destination once the queen
+     *  has left its square. */
+    int countMoves(Piece side) {
+        int n;
+        n = 0;
+        long emptyLo = emptyLo(null), emptyHi = emptyHi(null);
+        long qLo = _lo[side.ordinal()], qHi = _hi[side.ordinal()];
+        while ((qLo | qHi) != 0) {
+            int from = Bits.first(qLo, qHi);
+            qLo &= ~Bits.lo(from);
+            qHi &= ~Bits.hi(from);
+            Bits.queenReach(from, emptyLo, emptyHi, _reach);
+            long dLo = _reach[0], dHi = _reach[1];
+            long throwLo = emptyLo | Bits.lo(from),
+                throwHi = emptyHi | Bits.hi(from);
+            while ((dLo | dHi) != 0) {
+                int to = Bits.first(dLo, dHi);
+                dLo &= ~Bits.lo(to);
+                dHi &= ~Bits.hi(to);
+                Bits.queenReach(to, throwLo, throwHi, _reach);
+                n += Bits.count(_reach[0], _reach[1]);
+            }
+        }
+        return n;
+    }
+
     /** Return the contents the square at S. */
     final Piece get(Square s) {
-        return get(s.col(), s.row());
+        return get(s.index());
     }
 
     /** Return the contents of the square at (COL, ROW), where
-     *  0 <= COL, ROW <= 9. */
+     *  0 <= COL, ROW <= SIZE - 1. */
     final Piece get(int col, int row) {
-        return board[col][9 - row];
+        return get(Square.sq(col, row).index());
+    }
+
+    /** Return the contents of the square whose index is INDEX. */
+    private Piece get(int index) {
+        if (Bits.contains(_lo[WHITE.ordinal()], _hi[WHITE.ordinal()],
+                          index)) {
+            return WHITE;
+        } else if (Bits.contains(_lo[BLACK.ordinal()], _hi[BLACK.ordinal()],
+                                 index)) {
+            return BLACK;
+        } else if (Bits.contains(_lo[SPEAR.ordinal()], _hi[SPEAR.ordinal()],
+                                 index)) {
+            return SPEAR;
+        }
+        return EMPTY;
     }
 
     /** Return the contents of the square at COL ROW. */
@@ -107,20 +291,100 @@ class Board {
 
     /** Set square S to P. */
     final void put(Piece p, Square s) {
-        put(p, s.col(), s.row());
+        put(p, s.index());
     }
 
     /** Set square (COL, ROW) to P. */
     final void put(Piece p, int col, int row) {
-        board[col][9 - row] = p;
+        put(p, Square.sq(col, row).index());
+    }
+
+    /** Set the square whose index is INDEX to P (null being treated as
+     *  EMPTY). */
+    private void put(Piece p, int index) {
+        _hash ^= ZOBRIST[get(index).ordinal()][index];
+        if (p != null) {
+            _hash ^= ZOBRIST[p.ordinal()][index];
+        }
+        long lo = ~Bits.lo(index), hi = ~Bits.hi(index);
+        for (int k = WHITE.ordinal(); k <= SPEAR.ordinal(); k += 1) {
+            _lo[k] &= lo;
+            _hi[k] &= hi;
+        }
+        if (p != null && p != EMPTY) {
+            _lo[p.ordinal()] |= ~lo;
+            _hi[p.ordinal()] |= ~hi;
+        }
+        updateTrapped(index);
         _winner = EMPTY;
     }
 
+    /** Update _trappedLo and _trappedHi after a change to the contents of
+     *  the square with index INDEX, which can only affect a queen on that
+     *  square or on one of its neighbors. */
+    private void updateTrapped(int index) {
+        updateTrapped(Bits.neighborsLo(index) | Bits.lo(index),
+                      Bits.neighborsHi(index) | Bits.hi(index));
+    }
+
+    /** Update _trappedLo and _trappedHi after a move or its undoing has
+     *  changed the contents of the squares with indices FROM, TO, and
+     *  SPEAR. */
+    private void updateTrapped(int from, int to, int spear) {
+        updateTrapped(Bits.neighborsLo(from) | Bits.neighborsLo(to)
+                      | Bits.neighborsLo(spear) | Bits.lo(from)
+                      | Bits.lo(to),
+                      Bits.neighborsHi(from) | Bits.neighborsHi(to)
+                      | Bits.neighborsHi(spear) | Bits.hi(from)
+                      | Bits.hi(to));
+    }
+
+    /** Update _trappedLo and _trappedHi after changes to squares that
+     *  can only affect queens in the set NEARLO, NEARHI. */
+    private void updateTrapped(long nearLo, long nearHi) {
+        _trappedLo &= ~nearLo;
+        _trappedHi &= ~nearHi;
+        long qLo = (_lo[WHITE_INDEX] | _lo[BLACK_INDEX]) & nearLo,
+            qHi = (_hi[WHITE_INDEX] | _hi[BLACK_INDEX]) & nearHi;
+        if ((qLo | qHi) == 0) {
+            return;
+        }
+        long emptyLo = emptyLo(null), emptyHi = emptyHi(null);
+        while ((qLo | qHi) != 0) {
+            int q = Bits.first(qLo, qHi);
+            qLo &= ~Bits.lo(q);
+            qHi &= ~Bits.hi(q);
+            if ((Bits.neighborsLo(q) & emptyLo) == 0
+                && (Bits.neighborsHi(q) & emptyHi) == 0) {
+                _trappedLo |= Bits.lo(q);
+                _trappedHi |= Bits.hi(q);
+            }
+        }
+    }
+
     /** Set square COL ROW to P. */
     final void put(Piece p, char col, char row) {
         put(p, col - 'a', row - '1');
     }
 
+    /** Return the low word of the set (see Bits) of squares containing
+     *  P. */
+    long squaresLo(Piece p) {
+        if (p == EMPTY) {
+            return emptyLo(null);
+        }
+        return _lo[p.ordinal()];
+    }
+
+    /** Return the high word of the set (see Bits) of squares containing
+     *  P. */
+    long squaresHi(Piece p) {
+        if (p == EMPTY) {
+            return emptyHi(null);
+        }
+        return _hi[p.ordinal()];
+    }
+
     /** Return true iff FROM - TO is an unblocked queen move on the current
      *  board, ignoring the contents of ASEMPTY, if it is encountered.
      *  For this to be true, FROM-TO must be a queen move and the
@@ -130,18 +394,30 @@ class Board {
         if (!from.isQueenMove(to)) {
             return false;
         }
-        int dir = from.direction(to);
-        Square square = from.queenMove(dir, 1);
+        return Bits.slidesTo(from.index(), to.index(), from.direction(to),
+                             emptyLo(asEmpty), emptyHi(asEmpty));
+    }
 
-        while (square.index() != to.index()) {
-            if (get(square) == null || get(square) == EMPTY
-                    || square.equals(asEmpty)) {
-                square = square.queenMove(dir, 1);
-            } else {
-                return false;
-            }
+    /** Return the low word of the set of empty squares, counting ASEMPTY
+     *  (if non-null) as empty. */
+    private long emptyLo(Square asEmpty) {
+        long occupied = _lo[WHITE.ordinal()] | _lo[BLACK.ordinal()]
+            | _lo[SPEAR.ordinal()];
+        if (asEmpty != null) {
+            occupied &= ~Bits.lo(asEmpty.index());
+        }
+        return ~occupied & Bits.ALL_LO;
+    }
+
+    /** Return the high word of the set of empty squares, counting ASEMPTY
+     *  (if non-null) as empty. */
+    private long emptyHi(Square asEmpty) {
+        long occupied = _hi[WHITE.ordinal()] | _hi[BLACK.ordinal()]
+            | _hi[SPEAR.ordinal()];
+        if (asEmpty != null) {
+            occupied &= ~Bits.hi(asEmpty.index());
         }
-        return get(to) == null || get(to) == EMPTY || to.equals(asEmpty);
+        return ~occupied & Bits.ALL_HI;
     }
 
     /** Return true iff FROM is a valid starting square for a move. */
@@ -174,54 +450,114 @@ class Board {
         return isLegal(move.from(), move.to(), move.spear());
     }
 
-    /** Move FROM-TO(SPEAR), assuming this is a legal move. */
+    /** Move FROM-TO(SPEAR).  Throws IllegalArgumentException if this is
+     *  not a legal move. */
     void makeMove(Square from, Square to, Square spear) {
         if (!isLegal(from, to, spear)) {
             throw new IllegalArgumentException("Not a legal move");
         }
-        if (isLegal(from, to, spear)) {
-            put(get(from), to);
-            put(EMPTY, from);
-            put(SPEAR, spear);
-            numMoves += 1;
-
-            moves.add(Move.mv(from, to, spear));
-            _winner = winner();
-            if (turn() == WHITE) {
-                _turn = BLACK;
-            } else {
-                _turn = WHITE;
-            }
-
-        }
-
+        makeMove(Move.pack(from.index(), to.index(), spear.index()));
     }
 
-    /** Move according to MOVE, assuming it is a legal move. */
+    /** Move according to MOVE.  Throws IllegalArgumentException if this
+     *  is not a legal move. */
     void makeMove(Move move) {
         makeMove(move.from(), move.to(), move.spear());
     }
 
-    /** Undo one move.  Has no effect on the initial board. */
+    /** Move according to the packed move MOVE (see Move.pack), which must
+     *  be legal: it is not checked.  This is the path taken by the search
+     *  for moves it has generated itself, and does no more than update
+     *  the occupancy masks, hash, and trapped queens and push an undo
+     *  record.  The winner is not recomputed. */
+    void makeMove(int move) {
+        int from = Move.from(move), to = Move.to(move),
+            spear = Move.spear(move);
+        int k = UNDO_RECORD * numMoves;
+        _history[k] = move;
+        _history[k + 1] = (int) (_hash >>> 32);
+        _history[k + 2] = (int) _hash;
+        numMoves += 1;
+        int queen =
+            Bits.contains(_lo[WHITE_INDEX], _hi[WHITE_INDEX], from)
+            ? WHITE_INDEX : BLACK_INDEX;
+        long moveLo = Bits.lo(from) | Bits.lo(to),
+            moveHi = Bits.hi(from) | Bits.hi(to);
+        _lo[queen] ^= moveLo;
+        _hi[queen] ^= moveHi;
+        _lo[SPEAR_INDEX] |= Bits.lo(spear);
+        _hi[SPEAR_INDEX] |= Bits.hi(spear);
+        _hash ^= ZOBRIST[queen][from] ^ ZOBRIST[queen][to]
+            ^ ZOBRIST[SPEAR_INDEX][spear] ^ BLACK_TO_MOVE;
+        _turn = _turn.opponent();
+        updateTrapped(from, to, spear);
+        _winner = EMPTY;
+    }
+
+    /** Undo one move, restoring the position exactly as it was before
+     *  from its undo record.  Has no effect on the initial board. */
     void undo() {
-        if (moves.size() > 0) {
+        if (numMoves > 0) {
             numMoves -= 1;
-            Move prevMove = moves.remove(moves.size() - 1);
-            put(EMPTY, prevMove.spear());
-            put(get(prevMove.to()), prevMove.from());
-            put(EMPTY, prevMove.to());
+            int k = UNDO_RECORD * numMoves;
+            int move = _history[k];
+            int from = Move.from(move), to = Move.to(move),
+                spear = Move.spear(move);
+            _lo[SPEAR_INDEX] &= ~Bits.lo(spear);
+            _hi[SPEAR_INDEX] &= ~Bits.hi(spear);
+            int queen =
+                Bits.contains(_lo[WHITE_INDEX], _hi[WHITE_INDEX], to)
+                ? WHITE_INDEX : BLACK_INDEX;
+            long moveLo = Bits.lo(from) | Bits.lo(to),
+                moveHi = Bits.hi(from) | Bits.hi(to);
+            _lo[queen] ^= moveLo;
+            _hi[queen] ^= moveHi;
+            _hash = ((long) _history[k + 1] << 32)
+                | (_history[k + 2] & 0xffffffffL);
             _turn = _turn.opponent();
+            updateTrapped(from, to, spear);
         }
-        if (winner() != EMPTY) {
-            _winner = EMPTY;
-        }
+        _winner = EMPTY;
+    }
 
+    /** Store the legal moves for SIDE in the current position, packed as
+     *  for Move.pack, into MOVES[0 .. N-1], returning N.  MOVES must have
+     *  room for MAX_MOVES entries. */
+    int generateMoves(Piece side, int[] moves) {
+        int n;
+        n = 0;
+        long emptyLo = emptyLo(null), emptyHi = emptyHi(null);
+        long qLo = _lo[side.ordinal()], qHi = _hi[side.ordinal()];
+        while ((qLo | qHi) != 0) {
+            int from = Bits.first(qLo, qHi);
+            qLo &= ~Bits.lo(from);
+            qHi &= ~Bits.hi(from);
+            Bits.queenReach(from, emptyLo, emptyHi, _reach);
+            long dLo = _reach[0], dHi = _reach[1];
+            long throwLo = emptyLo | Bits.lo(from),
+                throwHi = emptyHi | Bits.hi(from);
+            while ((dLo | dHi) != 0) {
+                int to = Bits.first(dLo, dHi);
+                dLo &= ~Bits.lo(to);
+                dHi &= ~Bits.hi(to);
+                Bits.queenReach(to, throwLo, throwHi, _reach);
+                long sLo = _reach[0], sHi = _reach[1];
+                while ((sLo | sHi) != 0) {
+                    int spear = Bits.first(sLo, sHi);
+                    sLo &= ~Bits.lo(spear);
+                    sHi &= ~Bits.hi(spear);
+                    moves[n] = Move.pack(from, to, spear);
+                    n += 1;
+                }
+            }
+        }
+        return n;
     }
 
     /** Return an Iterator over the Squares that are reachable by an
      *  unblocked queen move from FROM. Does not pay attention to what
      *  piece (if any) is on FROM, nor to whether the game is finished.
-vb      *  Treats square ASEMPTY (if non-null) as if it were EMPTY.  (This
+     *  Treats square ASEMPTY (if non-null) as if it were EMPTY.  (This
      *  feature is useful when looking for Moves, because after moving a
      *  piece, one wants to treat the Square it came from as empty for
      *  purposes of spear throwing.) */
@@ -240,16 +576,18 @@ vb      *  Treats square ASEMPTY (if non-null) as if it were EMPTY.  (This
         return new LegalMoveIterator(side);
     }
 
-    /** An iterator used by reachableFrom. */
+    /** An iterator used by reachableFrom.  Walks each ray from the
+     *  starting square once, stopping at the first occupied square. */
     private class ReachableFromIterator implements Iterator<Square> {
 
         /** Iterator of all squares reachable by queen move from FROM,
          *  treating ASEMPTY as empty. */
         ReachableFromIterator(Square from, Square asEmpty) {
             _from = from;
-            _dir = 0;
+            _dir = -1;
             _steps = 0;
             _asEmpty = asEmpty;
+            _ray = NO_SQUARES;
             toNext();
         }
 
@@ -261,35 +599,45 @@ vb      *  Treats square ASEMPTY (if non-null) as if it were EMPTY.  (This
         @Override
         public Square next() {
             if (hasNext()) {
-                int steps = _steps;
-                int dir = _dir;
+                Square result = _ray[_steps];
                 toNext();
-                return _from.queenMove(dir, steps);
+                return result;
             }
             return null;
         }
 
         /** Advance _dir and _steps, so that the next valid Square is
-         *  _steps steps in direction _dir from _from. */
+         *  _ray[_steps], where _ray is the ray from _from in direction
+         *  _dir. */
         private void toNext() {
-            Square square = _from.queenMove(_dir, _steps + 1);
-            if (isUnblockedMove(_from, square, _asEmpty)) {
-                _steps += 1;
-            } else {
-                _steps = 0;
+            _steps += 1;
+            while (_steps >= _ray.length || !isOpen(_ray[_steps])) {
                 _dir += 1;
-                if (hasNext()) {
-                    toNext();
+                if (_dir >= 8) {
+                    return;
+                }
+                _ray = _from.ray(_dir);
+                _steps = 0;
+                if (_ray.length > 0 && isOpen(_ray[0])) {
+                    return;
                 }
+                _steps = _ray.length;
             }
         }
 
+        /** Return true iff a queen may pass through or land on S. */
+        private boolean isOpen(Square s) {
+            return s == _asEmpty || get(s) == EMPTY;
+        }
+
         /** Starting square. */
         private Square _from;
         /** Current direction. */
         private int _dir;
-        /** Current distance. */
+        /** Current distance, less one (an index into _ray). */
         private int _steps;
+        /** The ray from _from in direction _dir. */
+        private Square[] _ray;
         /** Square treated as empty. */
         private Square _asEmpty;
     }
@@ -299,114 +647,126 @@ vb      *  Treats square ASEMPTY (if non-null) as if it were EMPTY.  (This
 
         /** All legal moves for SIDE (WHITE or BLACK). */
         LegalMoveIterator(Piece side) {
-            _spearThrows = NO_SQUARES;
-            _pieceMoves = NO_SQUARES;
-            _fromPiece = side;
-            squares = Square.iterator();
+            _queensLo = _lo[side.ordinal()];
+            _queensHi = _hi[side.ordinal()];
             toNext();
         }
 
-        /**Creates an ArrayList of all the starting pieces
-         * that returns an ArrayList.*/
-        public ArrayList<Square> startingSquares() {
-            ArrayList<Square> list = new ArrayList<>();
-            for (int i = 0; i < SIZE * SIZE; i++) {
-                if (get(Square.sq(i)) == _fromPiece) {
-                    list.add(Square.sq(i));
-                }
-            }
-            return list;
-        }
-
         @Override
         public boolean hasNext() {
-            return squares.hasNext();
+            return _start >= 0;
         }
 
         @Override
         public Move next() {
-            Move newMove = Move.mv(_start, _nextSquare, _nextSpear);
+            if (!hasNext()) {
+                return null;
+            }
+            int spear = Bits.first(_spearsLo, _spearsHi);
+            _spearsLo &= ~Bits.lo(spear);
+            _spearsHi &= ~Bits.hi(spear);
+            Move newMove = Move.mv(Square.sq(_start), Square.sq(_nextSquare),
+                                   Square.sq(spear));
             toNext();
             return newMove;
         }
 
         /** Advance so that the next valid Move is
-         *  _start-_nextSquare(sp), where sp is the next value of
-         *  _spearThrows. */
+         *  _start-_nextSquare(sp), where sp is the first member of
+         *  _spearsLo, _spearsHi, or set _start to -1 if there are no
+         *  more moves. */
         private void toNext() {
-            if (!_spearThrows.hasNext()) {
-                if (!_pieceMoves.hasNext()) {
-                    while (squares.hasNext()) {
-                        Square sq = squares.next();
-                        if (get(sq) == _fromPiece) {
-                            _start = sq;
-                            _pieceMoves = reachableFrom(_start, null);
-                            _nextSquare = _pieceMoves.next();
-                            if (_nextSquare == null) {
-                                continue;
-                            }
-                            _spearThrows = reachableFrom(_nextSquare, _start);
-                            _nextSpear = _spearThrows.next();
-                            break;
-                        }
+            while ((_spearsLo | _spearsHi) == 0) {
+                while ((_destsLo | _destsHi) == 0) {
+                    if ((_queensLo | _queensHi) == 0) {
+                        _start = -1;
+                        return;
                     }
-                } else {
-                    _nextSquare = _pieceMoves.next();
-                    _spearThrows = reachableFrom(_nextSquare, _start);
-                    _nextSpear = _spearThrows.next();
+                    _start = Bits.first(_queensLo, _queensHi);
+                    _queensLo &= ~Bits.lo(_start);
+                    _queensHi &= ~Bits.hi(_start);
+                    Bits.queenReach(_start, emptyLo(null), emptyHi(null),
+                                    _reach);
+                    _destsLo = _reach[0];
+                    _destsHi = _reach[1];
                 }
-            } else {
-                _nextSpear = _spearThrows.next();
+                _nextSquare = Bits.first(_destsLo, _destsHi);
+                _destsLo &= ~Bits.lo(_nextSquare);
+                _destsHi &= ~Bits.hi(_nextSquare);
+                Square start = Square.sq(_start);
+                Bits.queenReach(_nextSquare, emptyLo(start), emptyHi(start),
+                                _reach);
+                _spearsLo = _reach[0];
+                _spearsHi = _reach[1];
             }
-
         }
 
-        /**Iterator of all Squares on the board.*/
-        private Iterator<Square> squares;
-        /**The next spear square from the iterator.*/
-        private Square _nextSpear;
-        /** Color of side whose moves we are iterating. */
-        private Piece _fromPiece;
-        /** Current starting square. */
-        private Square _start;
-        /** Current piece's new position. */
-        private Square _nextSquare;
-        /** Remaining moves from _start to consider. */
-        private Iterator<Square> _pieceMoves;
-        /** Remaining spear throws from _piece to consider. */
-        private Iterator<Square> _spearThrows;
+        /** Queens of the side being moved that remain to be considered. */
+        private long _queensLo, _queensHi;
+        /** Remaining destinations of the queen on _start. */
+        private long _destsLo, _destsHi;
+        /** Remaining spear throws from _nextSquare. */
+        private long _spearsLo, _spearsHi;
+        /** Index of the current starting square, or -1 when done. */
+        private int _start;
+        /** Index of the current piece's new position. */
+        private int _nextSquare;
+        /** Scratch result for Bits.queenReach. */
+        private final long[] _reach = new long[2];
     }
 
     @Override
     public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (int row = SIZE - 1; row >= 0; row -= 1) {
+            s.append("  ");
+            for (int col = 0; col < SIZE; col += 1) {
+                s.append(' ').append(get(col, row));
+            }
+            s.append('\n');
+        }
+        return s.toString();
+    }
 
-        String s = "";
-        for (int x = 0; x < SIZE; x++) {
-            for (int y = 0; y < SIZE; y++) {
-                Piece p = this.board[y][x];
-                if (y == 0) {
-                    s += "  ";
-                }
-                if (p == SPEAR) {
-                    s += " S";
-                } else if (p == WHITE) {
-                    s += " W";
-                } else if (p == BLACK) {
-                    s += " B";
-                } else {
-                    s += " -";
-                }
-                if (y == 9) {
-                    s += "\n";
-                }
+    /** Scratch space for results of Bits.queenReach. */
+    private final long[] _reach = new long[2];
+
+    /** Distance of the queens in the initial position from the nearest
+     *  corner, along an edge. */
+    private static final int OFFSET = (SIZE - 1) / 3;
+
+    /** An empty ray for initialization. */
+    private static final Square[] NO_SQUARES = new Square[0];
+
+    /** Ordinals of the occupying Pieces, as indices into _lo and _hi. */
+    private static final int WHITE_INDEX = WHITE.ordinal(),
+        BLACK_INDEX = BLACK.ordinal(), SPEAR_INDEX = SPEAR.ordinal();
+
+    /** ZOBRIST[p.ordinal()][k] is the hash key for Piece p on the square
+     *  with index k.  The keys for EMPTY are 0. */
+    private static final long[][] ZOBRIST = new long[4][SIZE * SIZE];
+    /** The hash key for BLACK being on move. */
+    private static final long BLACK_TO_MOVE;
+    /** Seed for the Zobrist keys, fixed so that hashes are reproducible
+     *  from run to run. */
+    private static final long ZOBRIST_SEED = 0x5A0B9157L;
+
+    static {
+        Random keys = new Random(ZOBRIST_SEED);
+        for (int p = WHITE.ordinal(); p <= SPEAR.ordinal(); p += 1) {
+            for (int k = 0; k < SIZE * SIZE; k += 1) {
+                ZOBRIST[p][k] = keys.nextLong();
             }
         }
-        return s;
+        BLACK_TO_MOVE = keys.nextLong();
     }
 
-    /** An empty iterator for initialization. */
-    private static final Iterator<Square> NO_SQUARES =
-        Collections.emptyIterator();
+    /** The set (see Bits) of squares holding queens that have no empty
+     *  neighbor. */
+    private long _trappedLo, _trappedHi;
+
+    /** Zobrist hash of the current position (see hash()). */
+    private long _hash;
 
     /** Piece whose turn it is (BLACK or WHITE). */
     private Piece _turn;
@@ -37,7 +37,7 @@ class BoardWidget extends Pad {
     /** Size parameters. */
     private static final int
         SQUARE_SIDE = 30,
-        BOARD_SIDE = SQUARE_SIDE * 10;
+        BOARD_SIDE = SQUARE_SIDE * Board.SIZE;
 
     /** A graphical representation of an Amazons board that sends commands
      *  derived from mouse clicks to COMMANDS.  */
@@ -1,8 +1,10 @@
 package amazons;
 
 import java.io.PrintStream;
+import java.util.List;
 import java.util.Random;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.function.Consumer;
@@ -43,6 +45,7 @@ final class Controller {
         _board.init();
         _white = _manualPlayerTemplate.create(WHITE, this);
         _black = _autoPlayerTemplate.create(BLACK, this);
+        _turnStart = System.currentTimeMillis();
         while (_playing) {
             _view.update(_board);
             String command;
@@ -64,17 +67,64 @@ final class Controller {
                 reportError("Error: %s%n", excp.getMessage());
             }
         }
+        _white.stopThinking();
+        _black.stopThinking();
         if (_logFile != null) {
             _logFile.close();
         }
     }
 
+    /** Play one game without reading any commands, between a player
+     *  created from WHITETEMPLATE as White and one created from
+     *  BLACKTEMPLATE as Black, after first making the moves in OPENING
+     *  from the initial position.  Each side has TIMELIMIT milliseconds
+     *  for all its moves, or unlimited time if TIMELIMIT is negative.
+     *  Return the winner. */
+    Piece playGame(Player whiteTemplate, Player blackTemplate,
+                   List<Move> opening, long timeLimit) {
+        _board.init();
+        _winner = null;
+        _white = whiteTemplate.create(WHITE, this);
+        _black = blackTemplate.create(BLACK, this);
+        _timeLimit = timeLimit;
+        for (Move move : opening) {
+            executeCommand(move.toString());
+        }
+        _whiteTime = _blackTime = _timeLimit;
+        _turnStart = System.currentTimeMillis();
+        try {
+            while (_winner == null) {
+                String command = _board.turn() == WHITE
+                    ? _white.myMove() : _black.myMove();
+                Move move = Move.mv(command);
+                if (move == null || !_board.isLegal(move)) {
+                    throw error("%s played an illegal move: %s",
+                                _board.turn().toName(), command);
+                }
+                executeCommand(command);
+            }
+        } finally {
+            _white.stopThinking();
+            _black.stopThinking();
+        }
+        return _winner;
+    }
+
     /** Return the current board.  The value returned should not be
      *  modified by the caller. */
     Board board() {
         return _board;
     }
 
+    /** Return the time in milliseconds left on SIDE's game clock, not
+     *  counting the current turn, or -1 if the game is untimed. */
+    long timeLeft(Piece side) {
+        if (_timeLimit < 0) {
+            return -1;
+        }
+        return Math.max(0, side == WHITE ? _whiteTime : _blackTime);
+    }
+
     /** Return a random integer in the range 0 inclusive to U, exclusive.
      *  Available for use by AIs that use random selections in some cases.
      *  Once setRandomSeed is called with a particular value, this method
@@ -141,7 +191,12 @@ final class Controller {
     private Command[] _commands = {
         new Command("\\s*quit$", this::doQuit),
         new Command("\\s*seed\\s+(\\d+)$", this::doSeed),
+        new Command("\\s*time\\s+(\\d+)$", this::doTime),
         new Command("\\s*dump$", this::doDump),
+        new Command("\\s*solve(?:\\s+(\\d+))?$", this::doSolve),
+        new Command("\\s*perft\\s+(\\d+)((?:\\s+(?:hash|parallel))*)$",
+                    this::doPerft),
+        new Command("\\s*stats$", this::doStats),
         new Command("\\s*new$", this::doNew),
         new Command("\\s*auto\\s+(w|W)(h|H)(i|I)(t|T)(e|E)$",
                 this::doAutoWhite),
@@ -184,8 +239,12 @@ final class Controller {
 
     /** Command "new". */
     private void doNew(Matcher unused) {
+        _white.stopThinking();
+        _black.stopThinking();
         _board.init();
         _winner = null;
+        _whiteTime = _blackTime = _timeLimit;
+        _turnStart = System.currentTimeMillis();
     }
 
     /** Command "quit". */
@@ -202,6 +261,90 @@ final class Controller {
         }
     }
 
+    /** Command "time MS", where MS is the first group of MAT: give each
+     *  side MS milliseconds for the rest of the game. */
+    private void doTime(Matcher mat) {
+        try {
+            _timeLimit = _whiteTime = _blackTime = Long.parseLong(mat.group(1));
+            _turnStart = System.currentTimeMillis();
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+    }
+
+    /** Command "solve [SECONDS]", where SECONDS is the optional first
+     *  group of MAT: try for SECONDS (default DEFAULT_SOLVE_SECONDS)
+     *  seconds to prove which side wins the current position, and
+     *  report the outcome, a winning move, the number of positions
+     *  the proof search expanded, and the time it took. */
+    private void doSolve(Matcher mat) {
+        long seconds = DEFAULT_SOLVE_SECONDS;
+        if (mat.group(1) != null) {
+            try {
+                seconds = Long.parseLong(mat.group(1));
+            } catch (NumberFormatException excp) {
+                seconds = Long.MAX_VALUE;
+            }
+            if (seconds > MAX_SOLVE_SECONDS) {
+                throw error("cannot solve for more than %d seconds",
+                            MAX_SOLVE_SECONDS);
+            }
+        }
+        if (_solver == null) {
+            _solver = new ProofNumberSearch(SOLVER_MEGABYTES);
+        }
+        long start = System.nanoTime();
+        Piece winner =
+            _solver.solve(_board, start + seconds * 1_000_000_000L);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (winner == null) {
+            reportNote("Unsolved (%d positions, %d ms)",
+                       _solver.nodes(), millis);
+        } else if (winner == _board.turn() && _solver.bestMove() != 0) {
+            reportNote("%s wins with %s (%d positions, %d ms)",
+                       winner.toName(), Move.mv(_solver.bestMove()),
+                       _solver.nodes(), millis);
+        } else {
+            reportNote("%s wins (%d positions, %d ms)",
+                       winner.toName(), _solver.nodes(), millis);
+        }
+    }
+
+    /** Command "perft DEPTH [hash] [parallel]", where DEPTH is the first
+     *  group of MAT and the options are in the second: report the number
+     *  of sequences of DEPTH moves from the current position, the time
+     *  taken to count them, and the rate, memoizing counts in a table of
+     *  PERFT_MEGABYTES megabytes if "hash" is given and counting
+     *  subtrees in parallel if "parallel" is. */
+    private void doPerft(Matcher mat) {
+        int depth;
+        try {
+            depth = Integer.parseInt(mat.group(1));
+        } catch (NumberFormatException excp) {
+            throw error("number too large");
+        }
+        String options = mat.group(2);
+        Perft perft =
+            new Perft(options.contains("hash") ? PERFT_MEGABYTES : 0);
+        long start = System.nanoTime();
+        long nodes = options.contains("parallel")
+            ? perft.parallelCount(_board, depth, ForkJoinPool.commonPool())
+            : perft.count(_board, depth);
+        reportNote("%s",
+                   Perft.report(depth, nodes, System.nanoTime() - start));
+    }
+
+    /** Command "stats": report the counts of the work each automated
+     *  player did choosing its last move. */
+    private void doStats(Matcher unused) {
+        for (Player player : new Player[] { _white, _black }) {
+            SearchStats stats = player.stats();
+            if (stats != null) {
+                reportNote("%s: %s", player.myPiece().toName(), stats);
+            }
+        }
+    }
+
     /** Dump the contents of the board on standard output. */
     private void doDump(Matcher unused) {
         System.out.printf("===%n%s===%n", _board);
@@ -209,34 +352,52 @@ final class Controller {
 
     /**Makes a auto player white that matches MAT.*/
     private void doAutoWhite(Matcher mat) {
+        _white.stopThinking();
         _white = _autoPlayerTemplate.create(WHITE, this);
 
     }
 
     /**Makes a black auto player that matches MAT.*/
     private void doAutoBlack(Matcher mat) {
+        _black.stopThinking();
         _black = _autoPlayerTemplate.create(BLACK, this);
     }
 
 
     /**Makes a white manual player that matches MAT.*/
     private void doManualWhite(Matcher mat) {
+        _white.stopThinking();
         _white = _manualPlayerTemplate.create(WHITE, this);
     }
 
     /**Makes a black manual player that matches MAT.*/
     private void doManualBlack(Matcher mat) {
+        _black.stopThinking();
         _black = _manualPlayerTemplate.create(BLACK, this);
     }
 
     /**Do move that matches MAT.*/
     private void doMove(Matcher mat) {
         if (_board.isLegal(Move.mv(mat.group(0)))) {
-            _board.makeMove(Move.mv(mat.group(0)));
+            long now = System.currentTimeMillis();
+            if (_board.turn() == WHITE) {
+                _whiteTime -= now - _turnStart;
+            } else {
+                _blackTime -= now - _turnStart;
+            }
+            _turnStart = now;
+            Move move = Move.mv(mat.group(0));
+            _board.makeMove(move);
             _winner = board().winner();
             if (_winner != null) {
                 reportNote("%s wins.", _winner.toName());
             }
+            _white.moveMade(move);
+            _black.moveMade(move);
+            if (_winner != null) {
+                _white.stopThinking();
+                _black.stopThinking();
+            }
         } else {
             reportError("Invalid move");
         }
@@ -246,10 +407,34 @@ final class Controller {
 
     /** The board. */
     private Board _board = new Board();
+    /** Solver used by the "solve" command, created on first use. */
+    private ProofNumberSearch _solver;
+    /** Default time limit of the "solve" command, in seconds. */
+    private static final long DEFAULT_SOLVE_SECONDS = 10;
+    /** Greatest time limit of the "solve" command, in seconds: about 31
+     *  years, which keeps its deadline within the range that
+     *  ProofNumberSearch.solve can compare with the clock. */
+    private static final long MAX_SOLVE_SECONDS = 1_000_000_000;
+    /** Size of the solver's transposition table, in megabytes. */
+    private static final int SOLVER_MEGABYTES = 64;
+    /** Size of the table used by "perft hash", in megabytes. */
+    private static final int PERFT_MEGABYTES = 64;
 
     /** The winning side of the current game. */
     private Piece _winner;
 
+    /** Milliseconds allotted to each side per game by the last "time"
+     *  command, or -1 if the game is untimed. */
+    private long _timeLimit = -1;
+
+    /** Milliseconds left on the White and Black game clocks. */
+    private long _whiteTime, _blackTime;
+
+    /** Time at which the current turn began (at the start of play, or
+     *  of the game, or when the last move was made), as from
+     *  System.currentTimeMillis(). */
+    private long _turnStart;
+
     /** True while game is still active. */
     private boolean _playing;
 
@@ -0,0 +1,314 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** A solver for positions in which the queens have been separated: no
+ *  region of empty squares is reachable by queens of both colors.  From
+ *  then on each side moves only within its own regions, and every move
+ *  uses up exactly one empty square (the queen vacates one square and
+ *  fills two), so the game reduces to counting: the side to move wins
+ *  iff it can make more moves than its opponent.  The number of moves a
+ *  side can make is the sum over its regions of the most moves its
+ *  queens can make in each.  That is found by a depth-first search that
+ *  splits regions as they divide, remembers the values of regions it has
+ *  solved, and stops as soon as it shows that a region can be filled
+ *  completely.  Each analysis is given a budget of search nodes; a
+ *  region whose search exceeds it contributes only bounds on its value.
+ *  @author Eileen Wang
+ */
+class EndgameSolver {
+
+    /** Return true iff no empty square on BOARD is reachable by king
+     *  moves through empty squares from queens of both colors. */
+    boolean separated(Board board) {
+        long emptyLo = board.squaresLo(EMPTY), emptyHi = board.squaresHi(EMPTY);
+        long wLo = board.squaresLo(WHITE), wHi = board.squaresHi(WHITE);
+        long bLo = board.squaresLo(BLACK), bHi = board.squaresHi(BLACK);
+        long nearBlackLo = Bits.adjacentLo(bLo, bHi) & emptyLo,
+            nearBlackHi = Bits.adjacentHi(bLo, bHi) & emptyHi;
+        long fLo = Bits.adjacentLo(wLo, wHi) & emptyLo,
+            fHi = Bits.adjacentHi(wLo, wHi) & emptyHi;
+        long rLo = fLo, rHi = fHi;
+        while ((fLo | fHi) != 0) {
+            if ((fLo & nearBlackLo | fHi & nearBlackHi) != 0) {
+                return false;
+            }
+            long nLo = Bits.adjacentLo(fLo, fHi) & emptyLo & ~rLo;
+            fHi = Bits.adjacentHi(fLo, fHi) & emptyHi & ~rHi;
+            fLo = nLo;
+            rLo |= fLo;
+            rHi |= fHi;
+        }
+        return true;
+    }
+
+    /** Compute bounds on the number of moves each side can make on
+     *  BOARD, which must be separated, searching no more than BUDGET
+     *  nodes (see low, high, and winner). */
+    void analyze(Board board, int budget) {
+        _nodes = budget;
+        count(board, WHITE);
+        count(board, BLACK);
+    }
+
+    /** Return the fewest moves SIDE can make according to the last
+     *  analysis. */
+    int low(Piece side) {
+        return _low[side.ordinal()];
+    }
+
+    /** Return the most moves SIDE can make according to the last
+     *  analysis. */
+    int high(Piece side) {
+        return _high[side.ordinal()];
+    }
+
+    /** Return the winner of the last position analyzed, in which TURN
+     *  was to move, or null if the bounds found do not decide it. */
+    Piece winner(Piece turn) {
+        Piece other = turn.opponent();
+        if (low(turn) > high(other)) {
+            return turn;
+        } else if (high(turn) <= low(other)) {
+            return other;
+        }
+        return null;
+    }
+
+    /** Return a packed move for the side to move on BOARD, which must be
+     *  separated, that leaves it able to make as many moves as possible,
+     *  or 0 if that cannot be determined in BUDGET nodes.  Since the
+     *  outcome depends only on move counts, this is perfect play. */
+    int bestMove(Board board, int budget) {
+        _nodes = budget;
+        Piece side = board.turn();
+        long eLo = board.squaresLo(EMPTY), eHi = board.squaresHi(EMPTY);
+        long qLo = board.squaresLo(side), qHi = board.squaresHi(side);
+        while ((qLo | qHi) != 0) {
+            region(Bits.first(qLo, qHi), eLo, eHi, qLo, qHi);
+            long rELo = _regionEmptyLo, rEHi = _regionEmptyHi,
+                rQLo = _regionQueensLo, rQHi = _regionQueensHi;
+            qLo &= ~rQLo;
+            qHi &= ~rQHi;
+            int value = fillRegion(rELo, rEHi, rQLo, rQHi);
+            if (_nodes < 0) {
+                return 0;
+            } else if (value > 0) {
+                return bestMove(rELo, rEHi, rQLo, rQHi, value);
+            }
+        }
+        return 0;
+    }
+
+    /** Return a packed move by the queens QLO, QHI in the region whose
+     *  empty squares are ELO, EHI, which allows VALUE moves in all, after
+     *  which VALUE - 1 moves remain, or 0 if none is found within the
+     *  budget. */
+    private int bestMove(long eLo, long eHi, long qLo, long qHi,
+                         int value) {
+        for (long qs = qLo; qs != 0; qs &= qs - 1) {
+            int move = bestMove(Long.numberOfTrailingZeros(qs),
+                                eLo, eHi, qLo, qHi, value);
+            if (move != 0) {
+                return move;
+            }
+        }
+        for (long qs = qHi; qs != 0; qs &= qs - 1) {
+            int move = bestMove(64 + Long.numberOfTrailingZeros(qs),
+                                eLo, eHi, qLo, qHi, value);
+            if (move != 0) {
+                return move;
+            }
+        }
+        return 0;
+    }
+
+    /** As for bestMove(ELO, EHI, QLO, QHI, VALUE), but considering only
+     *  moves of the queen on square FROM. */
+    private int bestMove(int from, long eLo, long eHi, long qLo, long qHi,
+                         int value) {
+        Bits.queenReach(from, eLo, eHi, _reach);
+        long dLo = _reach[0], dHi = _reach[1];
+        long movedLo = qLo & ~Bits.lo(from), movedHi = qHi & ~Bits.hi(from);
+        while ((dLo | dHi) != 0) {
+            int to = Bits.first(dLo, dHi);
+            dLo &= ~Bits.lo(to);
+            dHi &= ~Bits.hi(to);
+            long aLo = (eLo | Bits.lo(from)) & ~Bits.lo(to),
+                aHi = (eHi | Bits.hi(from)) & ~Bits.hi(to);
+            Bits.queenReach(to, aLo, aHi, _reach);
+            long sLo = _reach[0], sHi = _reach[1];
+            while ((sLo | sHi) != 0) {
+                int spear = Bits.first(sLo, sHi);
+                sLo &= ~Bits.lo(spear);
+                sHi &= ~Bits.hi(spear);
+                int rest = fill(aLo & ~Bits.lo(spear), aHi & ~Bits.hi(spear),
+                                movedLo | Bits.lo(to), movedHi | Bits.hi(to));
+                if (_nodes < 0) {
+                    return 0;
+                } else if (rest == value - 1) {
+                    return Move.pack(from, to, spear);
+                }
+            }
+        }
+        return 0;
+    }
+
+    /** Set _low and _high for SIDE on BOARD. */
+    private void count(Board board, Piece side) {
+        long eLo = board.squaresLo(EMPTY), eHi = board.squaresHi(EMPTY);
+        long qLo = board.squaresLo(side), qHi = board.squaresHi(side);
+        int low, high;
+        low = high = 0;
+        while ((qLo | qHi) != 0) {
+            region(Bits.first(qLo, qHi), eLo, eHi, qLo, qHi);
+            long rELo = _regionEmptyLo, rEHi = _regionEmptyHi,
+                rQLo = _regionQueensLo, rQHi = _regionQueensHi;
+            qLo &= ~rQLo;
+            qHi &= ~rQHi;
+            int value = fillRegion(rELo, rEHi, rQLo, rQHi);
+            low += value;
+            high += _nodes < 0 ? Bits.count(rELo, rEHi) : value;
+        }
+        _low[side.ordinal()] = low;
+        _high[side.ordinal()] = high;
+    }
+
+    /** Return the most moves the queens QLO, QHI can make, where ELO, EHI
+     *  are the empty squares, or a lower bound on that if the node budget
+     *  runs out before it is determined. */
+    private int fill(long eLo, long eHi, long qLo, long qHi) {
+        int total = 0;
+        while ((qLo | qHi) != 0) {
+            region(Bits.first(qLo, qHi), eLo, eHi, qLo, qHi);
+            long rELo = _regionEmptyLo, rEHi = _regionEmptyHi,
+                rQLo = _regionQueensLo, rQHi = _regionQueensHi;
+            qLo &= ~rQLo;
+            qHi &= ~rQHi;
+            total += fillRegion(rELo, rEHi, rQLo, rQHi);
+        }
+        return total;
+    }
+
+    /** As for fill, where the empty squares ELO, EHI and queens QLO, QHI
+     *  form a single region. */
+    private int fillRegion(long eLo, long eHi, long qLo, long qHi) {
+        int upper = Bits.count(eLo, eHi);
+        if (upper <= 1) {
+            return upper;
+        }
+        int slot = slot(eLo, eHi, qLo, qHi);
+        if (_memo[slot] == eLo && _memo[slot + 1] == eHi
+            && _memo[slot + 2] == qLo && _memo[slot + 3] == qHi
+            && _memo[slot + 4] != 0) {
+            return (int) _memo[slot + 4] - 1;
+        }
+        _nodes -= 1;
+        if (_nodes < 0) {
+            return 0;
+        }
+        int best = 0;
+        for (long qs = qLo; qs != 0 && best < upper; qs &= qs - 1) {
+            best = fillFrom(Long.numberOfTrailingZeros(qs),
+                            eLo, eHi, qLo, qHi, best, upper);
+        }
+        for (long qs = qHi; qs != 0 && best < upper; qs &= qs - 1) {
+            best = fillFrom(64 + Long.numberOfTrailingZeros(qs),
+                            eLo, eHi, qLo, qHi, best, upper);
+        }
+        if (_nodes >= 0) {
+            _memo[slot] = eLo;
+            _memo[slot + 1] = eHi;
+            _memo[slot + 2] = qLo;
+            _memo[slot + 3] = qHi;
+            _memo[slot + 4] = best + 1;
+        }
+        return best;
+    }
+
+    /** Return the larger of BEST and the most moves that the queens QLO,
+     *  QHI can make among the empty squares ELO, EHI starting with a
+     *  move of the queen on square FROM, stopping early if that reaches
+     *  UPPER. */
+    private int fillFrom(int from, long eLo, long eHi, long qLo, long qHi,
+                         int best, int upper) {
+        Bits.queenReach(from, eLo, eHi, _reach);
+        long dLo = _reach[0], dHi = _reach[1];
+        long movedLo = qLo & ~Bits.lo(from), movedHi = qHi & ~Bits.hi(from);
+        while ((dLo | dHi) != 0 && best < upper) {
+            int to = Bits.first(dLo, dHi);
+            dLo &= ~Bits.lo(to);
+            dHi &= ~Bits.hi(to);
+            long aLo = (eLo | Bits.lo(from)) & ~Bits.lo(to),
+                aHi = (eHi | Bits.hi(from)) & ~Bits.hi(to);
+            Bits.queenReach(to, aLo, aHi, _reach);
+            long sLo = _reach[0], sHi = _reach[1];
+            while ((sLo | sHi) != 0 && best < upper) {
+                int spear = Bits.first(sLo, sHi);
+                sLo &= ~Bits.lo(spear);
+                sHi &= ~Bits.hi(spear);
+                best = Math.max(best,
+                                1 + fill(aLo & ~Bits.lo(spear),
+                                         aHi & ~Bits.hi(spear),
+                                         movedLo | Bits.lo(to),
+                                         movedHi | Bits.hi(to)));
+            }
+        }
+        return best;
+    }
+
+    /** Set _regionEmptyLo, _regionEmptyHi, _regionQueensLo, and
+     *  _regionQueensHi to the empty squares among ELO, EHI and the queens
+     *  among QLO, QHI that are connected by king moves through empty
+     *  squares to the queen on square SEED. */
+    private void region(int seed, long eLo, long eHi, long qLo, long qHi) {
+        long rELo, rEHi, rQLo = Bits.lo(seed), rQHi = Bits.hi(seed);
+        rELo = rEHi = 0;
+        long fLo = rQLo, fHi = rQHi;
+        while ((fLo | fHi) != 0) {
+            long newELo = Bits.adjacentLo(fLo, fHi) & eLo & ~rELo,
+                newEHi = Bits.adjacentHi(fLo, fHi) & eHi & ~rEHi;
+            long newQLo = Bits.adjacentLo(newELo, newEHi) & qLo & ~rQLo,
+                newQHi = Bits.adjacentHi(newELo, newEHi) & qHi & ~rQHi;
+            rELo |= newELo;
+            rEHi |= newEHi;
+            rQLo |= newQLo;
+            rQHi |= newQHi;
+            fLo = newELo | newQLo;
+            fHi = newEHi | newQHi;
+        }
+        _regionEmptyLo = rELo;
+        _regionEmptyHi = rEHi;
+        _regionQueensLo = rQLo;
+        _regionQueensHi = rQHi;
+    }
+
+    /** Return the index in _memo of the entry for the region with empty
+     *  squares ELO, EHI and queens QLO, QHI. */
+    private static int slot(long eLo, long eHi, long qLo, long qHi) {
+        long h = eLo * 0x9E3779B97F4A7C15L + eHi * 0xC2B2AE3D27D4EB4FL
+            + qLo * 0x165667B19E3779F9L + qHi * 0xD6E8FEB86659FD93L;
+        h ^= h >>> 32;
+        return ENTRY_LONGS * ((int) h & (MEMO_ENTRIES - 1));
+    }
+
+    /** Number of entries in the table of solved regions. */
+    private static final int MEMO_ENTRIES = 1 << 16;
+    /** Longs per entry: the region's empty squares and queens (as two
+     *  pairs of words), and its value plus 1 (0 meaning no entry). */
+    private static final int ENTRY_LONGS = 5;
+
+    /** Solved regions. */
+    private final long[] _memo = new long[MEMO_ENTRIES * ENTRY_LONGS];
+    /** Search nodes left in the current budget; negative once it has
+     *  run out. */
+    private int _nodes;
+    /** Results of the last analysis, indexed by Piece.ordinal(). */
+    private final int[] _low = new int[4], _high = new int[4];
+    /** Result of region. */
+    private long _regionEmptyLo, _regionEmptyHi,
+        _regionQueensLo, _regionQueensHi;
+    /** Result of Bits.queenReach. */
+    private final long[] _reach = new long[2];
+
+}
@@ -0,0 +1,18 @@
+package amazons;
+
+/** A static evaluation function for the leaves of a Search.
+ *  @author Eileen Wang
+ */
+interface Evaluator {
+
+    /** Return a heuristic value for BOARD, which must not be a finished
+     *  game: positive values favor White and negative ones Black, and
+     *  all have magnitudes well below Search.WINNING_VALUE. */
+    int score(Board board);
+
+    /** A factory method that returns a new Evaluator of my concrete type,
+     *  with its own working storage, so that each Search thread may have
+     *  its own. */
+    Evaluator create();
+
+}
@@ -6,6 +6,7 @@ import ucb.junit.textui;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Random;
 import java.util.Set;
 
 /** Junit tests for our Board iterators.
@@ -56,6 +57,87 @@ public class IteratorTests {
         }
         assertEquals(REACHABLEFROM_LEGALSQUARES.size(), numMoves);
         assertEquals(REACHABLEFROM_LEGALSQUARES.size(), moves.size());
+        assertEquals(numMoves, b.countMoves(Piece.WHITE));
+        assertFalse(b.hasAnyMove(Piece.BLACK));
+    }
+
+    /** Checks the number of legal moves in the initial position, which
+     *  is known to be 2176 for each side. */
+    @Test
+    public void testInitialMoveCount() {
+        Board b = new Board();
+        for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+            int numMoves = 0;
+            Iterator<Move> legalMoves = b.legalMoves(side);
+            while (legalMoves.hasNext()) {
+                assertTrue(b.isLegal(legalMoves.next()));
+                numMoves += 1;
+            }
+            assertEquals(2176, numMoves);
+            assertEquals(2176, b.countMoves(side));
+            assertTrue(b.hasAnyMove(side));
+        }
+    }
+
+    /** Checks that generateMoves produces exactly the moves of
+     *  legalMoves, and that packed moves can be made and undone. */
+    @Test
+    public void testGenerateMoves() {
+        Board b = new Board();
+        buildBoard(b, REACHABLEFROMTEST_BOARD);
+        String before = b.toString();
+        int[] packed = new int[Board.MAX_MOVES];
+        for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+            Set<Move> expected = new HashSet<>();
+            Iterator<Move> legalMoves = b.legalMoves(side);
+            while (legalMoves.hasNext()) {
+                expected.add(legalMoves.next());
+            }
+            int n = b.generateMoves(side, packed);
+            Set<Move> generated = new HashSet<>();
+            for (int i = 0; i < n; i += 1) {
+                generated.add(Move.mv(packed[i]));
+            }
+            assertEquals(expected.size(), n);
+            assertEquals(expected, generated);
+            assertEquals(n, b.countMoves(side));
+            assertEquals(n > 0, b.hasAnyMove(side));
+        }
+        int n = b.generateMoves(b.turn(), packed);
+        b.makeMove(packed[n - 1]);
+        assertEquals(1, b.numMoves());
+        b.undo();
+        assertEquals(0, b.numMoves());
+        assertEquals(before, b.toString());
+    }
+
+    /** Checks that the incrementally maintained hasAnyMove agrees with
+     *  move counting throughout random games and while undoing them. */
+    @Test
+    public void testHasAnyMove() {
+        Random random = new Random(7);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int game = 0; game < 10; game += 1) {
+            Board b = new Board();
+            while (b.winner() == null) {
+                checkHasAnyMove(b);
+                int n = b.generateMoves(b.turn(), moves);
+                b.makeMove(moves[random.nextInt(n)]);
+            }
+            assertFalse(b.hasAnyMove(b.turn()));
+            while (b.numMoves() > 0) {
+                checkHasAnyMove(b);
+                b.undo();
+            }
+        }
+    }
+
+    /** Check that hasAnyMove agrees with countMoves for both sides on
+     *  B. */
+    private void checkHasAnyMove(Board b) {
+        for (Piece side : new Piece[] { Piece.WHITE, Piece.BLACK }) {
+            assertEquals(b.countMoves(side) > 0, b.hasAnyMove(side));
+        }
     }
 
 
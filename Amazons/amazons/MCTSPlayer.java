@@ -0,0 +1,455 @@
+package amazons;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static amazons.Piece.*;
+import static amazons.Utils.*;
+
+/** A Player that chooses moves by Monte Carlo tree search (UCT).  Each
+ *  iteration descends the tree from the current position, choosing at
+ *  each node the child with the best upper confidence bound on its
+ *  value, plays a few random moves from the leaf it reaches, scores the
+ *  result with an Evaluator, and adds that score to the nodes on its
+ *  path.  Several threads may grow the same tree at once; each adds a
+ *  temporary "virtual loss" to the nodes it is passing through, which
+ *  steers the others elsewhere.  The nodes live in fixed-size arrays, so
+ *  the tree never uses more than a set amount of memory, and the subtree
+ *  for the position reached after my move and my opponent's reply is
+ *  kept for my next turn.
+ *  @author Eileen Wang
+ */
+class MCTSPlayer extends Player {
+
+    /** A new MCTSPlayer with no piece or controller (intended to produce
+     *  a template). */
+    MCTSPlayer() {
+        this(DEFAULT_MEGABYTES, 1, new TerritoryEvaluator());
+    }
+
+    /** A new MCTSPlayer template, as for MCTSPlayer(), whose players keep
+     *  a tree of about MEGABYTES megabytes, grow it on THREADS threads at
+     *  once, and score playouts with Evaluators created from
+     *  EVALUATOR. */
+    MCTSPlayer(int megabytes, int threads, Evaluator evaluator) {
+        super(null, null);
+        _megabytes = megabytes;
+        _threads = Math.max(1, threads);
+        _evaluator = evaluator;
+    }
+
+    /** A new MCTSPlayer playing PIECE under control of CONTROLLER, with
+     *  the same settings as TEMPLATE. */
+    private MCTSPlayer(Piece piece, Controller controller,
+                       MCTSPlayer template) {
+        super(piece, controller);
+        _megabytes = template._megabytes;
+        _threads = template._threads;
+        _evaluator = template._evaluator;
+    }
+
+    @Override
+    Player create(Piece piece, Controller controller) {
+        return new MCTSPlayer(piece, controller, this);
+    }
+
+    @Override
+    String myMove() {
+        Move move = findMove();
+        _controller.reportMove(move);
+        return move.toString();
+    }
+
+    /** Return a move for me from the current position, assuming there
+     *  is a move: the most visited move after growing the tree until my
+     *  time budget for this move runs out. */
+    private Move findMove() {
+        Board b = board();
+        if (_moves == null) {
+            allocateTree();
+        }
+        long budget = moveBudget(b);
+        long left = _controller.timeLeft(_myPiece);
+        if (left >= 0) {
+            budget = Math.min(budget, left / 4);
+        }
+        _deadline = System.nanoTime() + budget * 1_000_000;
+        advanceRoot(b);
+        for (Worker worker : _workers) {
+            worker.setup();
+        }
+        _workers[0].expand(_root);
+        if (_childCount[_root] > 1) {
+            Future<?>[] helpers = new Future<?>[_threads];
+            for (int i = 1; i < _threads; i += 1) {
+                helpers[i] = _helpers.submit(_workers[i]);
+            }
+            _workers[0].run();
+            for (int i = 1; i < _threads; i += 1) {
+                try {
+                    helpers[i].get();
+                } catch (InterruptedException | ExecutionException excp) {
+                    throw new IllegalStateException(excp);
+                }
+            }
+        }
+        int first = _firstChild.get(_root);
+        if (first <= 0) {
+            throw error("no legal move");
+        }
+        int best = first;
+        for (int c = first + 1; c < first + _childCount[_root]; c += 1) {
+            if (_visits.get(c) > _visits.get(best)) {
+                best = c;
+            }
+        }
+        return Move.mv(_moves[best]);
+    }
+
+    /** Create the node arrays, and the workers and threads that grow the
+     *  tree. */
+    private void allocateTree() {
+        _capacity = (int) Math.min(Integer.MAX_VALUE / 2,
+                                   (long) _megabytes * (1 << 20)
+                                   / BYTES_PER_NODE);
+        _capacity = Math.max(_capacity, Board.MAX_MOVES + 1);
+        _moves = new int[_capacity];
+        _childCount = new int[_capacity];
+        _firstChild = new AtomicIntegerArray(_capacity);
+        _visits = new AtomicIntegerArray(_capacity);
+        _reward = new AtomicLongArray(_capacity);
+        _workers = new Worker[_threads];
+        for (int i = 0; i < _threads; i += 1) {
+            _workers[i] = new Worker(_evaluator.create(),
+                                     _controller.randInt(Integer.MAX_VALUE));
+        }
+        if (_threads > 1) {
+            _helpers = Executors.newFixedThreadPool(_threads - 1, r -> {
+                Thread thread = new Thread(r, "amazons-mcts");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /** Make the node for BOARD the root of the tree.  If BOARD continues
+     *  the game from the previous root, and the tree is not too full,
+     *  that node is found by following the moves played since;
+     *  otherwise (or if it was left unexpanded for lack of room), the
+     *  tree is cleared.  The tree is too full if it is more than three
+     *  quarters full, or has no room to expand a node with as many
+     *  children as a position can have, since the new root may need
+     *  it. */
+    void advanceRoot(Board board) {
+        int done = _rootBoard.numMoves();
+        int size = _size.get();
+        boolean reuse = size > 0
+            && size <= _capacity / 4 * 3
+            && _capacity - size >= Board.MAX_MOVES
+            && board.numMoves() >= done;
+        for (int k = 0; reuse && k < done; k += 1) {
+            reuse = board.move(k) == _rootBoard.move(k);
+        }
+        int node = _root;
+        for (int k = done; reuse && k < board.numMoves(); k += 1) {
+            node = child(node, board.move(k));
+            reuse = node > 0;
+        }
+        reuse = reuse && _firstChild.get(node) != LEAF;
+        if (!reuse) {
+            _size.set(1);
+            node = 0;
+            initNode(node, 0);
+        }
+        _root = node;
+        _rootBoard.copy(board);
+    }
+
+    /** Return the number of nodes in my tree. */
+    int treeSize() {
+        return _size.get();
+    }
+
+    /** Return the number of visits to the root of my tree. */
+    int rootVisits() {
+        return _visits.get(_root);
+    }
+
+    /** Return the child of NODE reached by packed move MOVE, or -1 if
+     *  there is none in the tree. */
+    private int child(int node, int move) {
+        int first = _firstChild.get(node);
+        if (first > 0) {
+            for (int c = first; c < first + _childCount[node]; c += 1) {
+                if (_moves[c] == move) {
+                    return c;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /** Make NODE an unvisited, unexpanded node reached by packed move
+     *  MOVE. */
+    private void initNode(int node, int move) {
+        _moves[node] = move;
+        _childCount[node] = 0;
+        _visits.set(node, 0);
+        _reward.set(node, 0);
+        _firstChild.set(node, 0);
+    }
+
+    /** Return the index of the first of N consecutive free nodes, or -1
+     *  if the tree is full. */
+    private int allocate(int n) {
+        while (true) {
+            int size = _size.get();
+            if (size + n > _capacity) {
+                return -1;
+            } else if (_size.compareAndSet(size, size + n)) {
+                return size;
+            }
+        }
+    }
+
+    /** One thread's share of the work of growing the tree, with its own
+     *  board and working storage. */
+    private class Worker implements Runnable {
+
+        /** A Worker scoring playouts with EVALUATOR and choosing random
+         *  moves from a generator seeded with SEED. */
+        Worker(Evaluator evaluator, long seed) {
+            _workerEvaluator = evaluator;
+            _random = new Random(seed);
+        }
+
+        /** Prepare to grow the tree from the current root. */
+        void setup() {
+            _board.copy(_rootBoard);
+        }
+
+        /** Grow the tree until the deadline passes. */
+        @Override
+        public void run() {
+            while (System.nanoTime() < _deadline) {
+                iterate();
+            }
+        }
+
+        /** Perform one descent, playout, and update. */
+        private void iterate() {
+            int node = _root;
+            int depth = 0;
+            _path[depth++] = node;
+            _visits.addAndGet(node, VIRTUAL_LOSS);
+            while (true) {
+                int first = _firstChild.get(node);
+                if (first == 0 && _visits.get(node) >= EXPAND_VISITS) {
+                    expand(node);
+                    first = _firstChild.get(node);
+                }
+                if (first <= 0) {
+                    break;
+                }
+                node = select(node, first);
+                _board.makeMove(_moves[node]);
+                _visits.addAndGet(node, VIRTUAL_LOSS);
+                _path[depth++] = node;
+            }
+            double whiteReward = playout();
+            while (_board.numMoves() > _rootBoard.numMoves()) {
+                _board.undo();
+            }
+            boolean whiteMoved = _rootBoard.turn() == BLACK;
+            for (int i = 0; i < depth; i += 1) {
+                double reward = whiteMoved ? whiteReward : 1 - whiteReward;
+                _visits.addAndGet(_path[i], 1 - VIRTUAL_LOSS);
+                _reward.addAndGet(_path[i],
+                                  Math.round(reward * REWARD_SCALE));
+                whiteMoved = !whiteMoved;
+            }
+        }
+
+        /** Add children for all legal moves to NODE, whose position is on
+         *  my board, unless another thread is already doing so.  NODE is
+         *  instead marked as never to be expanded if it has no moves or
+         *  the tree is full. */
+        void expand(int node) {
+            if (!_firstChild.compareAndSet(node, 0, LEAF)) {
+                return;
+            }
+            int n = _board.generateMoves(_board.turn(), _buffer);
+            int first = n == 0 ? -1 : allocate(n);
+            if (first < 0) {
+                return;
+            }
+            for (int i = 0; i < n; i += 1) {
+                initNode(first + i, _buffer[i]);
+            }
+            _childCount[node] = n;
+            _firstChild.set(node, first);
+        }
+
+        /** Return the child of NODE, whose children start at FIRST, with
+         *  the greatest upper confidence bound on its value to the player
+         *  moving into it.  Unvisited children come first, and ties are
+         *  broken by starting the scan at a random child. */
+        private int select(int node, int first) {
+            int n = _childCount[node];
+            double logVisits = Math.log(Math.max(1, _visits.get(node)));
+            int end = first + n;
+            int c = first + _random.nextInt(n);
+            int best = c;
+            double bestBound = -1;
+            for (int i = 0; i < n; i += 1, c += 1) {
+                if (c == end) {
+                    c = first;
+                }
+                int visits = _visits.get(c);
+                if (visits == 0) {
+                    return c;
+                }
+                double bound =
+                    _reward.get(c) / ((double) REWARD_SCALE * visits)
+                    + EXPLORATION * Math.sqrt(logVisits / visits);
+                if (bound > bestBound) {
+                    best = c;
+                    bestBound = bound;
+                }
+            }
+            return best;
+        }
+
+        /** Play up to PLAYOUT_PLIES random moves on my board and return
+         *  the estimated chance that White wins from the resulting
+         *  position: 0 or 1 if the game is over, and otherwise a logistic
+         *  function of its evaluation. */
+        private double playout() {
+            for (int ply = 0; ply < PLAYOUT_PLIES && _board.winner() == null;
+                 ply += 1) {
+                _board.makeMove(randomMove());
+            }
+            Piece winner = _board.winner();
+            if (winner != null) {
+                return winner == WHITE ? 1 : 0;
+            }
+            double score = _workerEvaluator.score(_board);
+            return 1 / (1 + Math.exp(-score / EVALUATION_SCALE));
+        }
+
+        /** Return a random legal move, packed, for the side to move on my
+         *  board, which must have one.  Chooses a queen that can move,
+         *  then a destination, then a spear throw, each uniformly, which
+         *  is far cheaper than generating every move.  The moves are
+         *  therefore not equally likely: those of a queen with few moves
+         *  (typically one nearly trapped) are chosen more often than
+         *  those of a free one.  That bias is intended: a playout need
+         *  only be cheap and end in a plausible position for the
+         *  evaluator to score, and choosing uniformly among all moves
+         *  would cost about as much as generating them. */
+        private int randomMove() {
+            Piece side = _board.turn();
+            long queensLo = _board.squaresLo(side),
+                queensHi = _board.squaresHi(side);
+            long emptyLo = _board.squaresLo(EMPTY),
+                emptyHi = _board.squaresHi(EMPTY);
+            int queens = Bits.count(queensLo, queensHi);
+            int start = _random.nextInt(queens);
+            for (int i = 0; i < queens; i += 1) {
+                int from = Bits.nth(queensLo, queensHi, (start + i) % queens);
+                Bits.queenReach(from, emptyLo, emptyHi, _reach);
+                int n = Bits.count(_reach[0], _reach[1]);
+                if (n == 0) {
+                    continue;
+                }
+                int to = Bits.nth(_reach[0], _reach[1], _random.nextInt(n));
+                Bits.queenReach(to, emptyLo | Bits.lo(from),
+                                emptyHi | Bits.hi(from), _reach);
+                n = Bits.count(_reach[0], _reach[1]);
+                int spear =
+                    Bits.nth(_reach[0], _reach[1], _random.nextInt(n));
+                return Move.pack(from, to, spear);
+            }
+            throw error("no legal move");
+        }
+
+        /** Evaluator for the ends of my playouts. */
+        private final Evaluator _workerEvaluator;
+        /** Source of my random choices. */
+        private final Random _random;
+        /** The position being explored. */
+        private final Board _board = new Board();
+        /** The nodes on the current descent. */
+        private final int[] _path = new int[Board.SIZE * Board.SIZE + 1];
+        /** Moves generated for an expansion. */
+        private final int[] _buffer = new int[Board.MAX_MOVES];
+        /** Reachable squares, as for Bits.queenReach. */
+        private final long[] _reach = new long[2];
+    }
+
+    /** Default size of the tree in megabytes. */
+    static final int DEFAULT_MEGABYTES = 64;
+
+    /** Approximate memory used by one node. */
+    private static final int BYTES_PER_NODE = 24;
+    /** The value of _firstChild for a node that is never to have
+     *  children. */
+    private static final int LEAF = -1;
+    /** The number of visits after which a node is expanded. */
+    private static final int EXPAND_VISITS = 24;
+    /** The number of visits (with no reward) added to each node on a
+     *  descent while its playout is in progress. */
+    private static final int VIRTUAL_LOSS = 3;
+    /** Weight of the exploration term of the upper confidence bound. */
+    private static final double EXPLORATION = 0.5;
+    /** The number of random moves in a playout. */
+    private static final int PLAYOUT_PLIES = 4;
+    /** The evaluation difference that makes a side about 73% likely to
+     *  win (see playout). */
+    private static final double EVALUATION_SCALE = 40;
+    /** Rewards are stored as fixed-point numbers with this scale. */
+    private static final int REWARD_SCALE = 1 << 12;
+
+    /** Size of my tree in megabytes. */
+    private final int _megabytes;
+    /** Number of threads I grow my tree on. */
+    private final int _threads;
+    /** Template for my workers' playout evaluators. */
+    private final Evaluator _evaluator;
+
+    /** Number of nodes my tree can hold. */
+    private int _capacity;
+    /** The packed move leading to each node, or null before the tree is
+     *  first allocated. */
+    private int[] _moves;
+    /** Number of children of each expanded node. */
+    private int[] _childCount;
+    /** Index of the first of each node's (consecutive) children, 0 if it
+     *  has not been expanded, or LEAF.  Node 0 is never a child. */
+    private AtomicIntegerArray _firstChild;
+    /** Visits to each node, including virtual losses in progress. */
+    private AtomicIntegerArray _visits;
+    /** Total reward of each node's playouts to the player who moved into
+     *  it, scaled by REWARD_SCALE. */
+    private AtomicLongArray _reward;
+    /** Number of nodes in use. */
+    private final AtomicInteger _size = new AtomicInteger();
+    /** The node for the current position. */
+    private int _root;
+    /** The current position. */
+    private final Board _rootBoard = new Board();
+    /** Time at which the current search stops, in System.nanoTime()
+     *  units. */
+    private volatile long _deadline;
+    /** My main worker, followed by any helpers, created on first use. */
+    private Worker[] _workers;
+    /** Threads running helper workers, or null if there are none. */
+    private ExecutorService _helpers;
+
+}
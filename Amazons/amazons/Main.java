@@ -5,6 +5,7 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Paths;
 
 import static amazons.Utils.error;
 
@@ -15,14 +16,29 @@ import ucb.util.CommandArgs;
  */
 public class Main {
 
-    /** The main program.  ARGS may contain the option --display. */
+    /** The main program.  ARGS may contain the option --display, and
+     *  --size=N to play on an N x N board. */
     public static void main(String... args) {
 
         CommandArgs options =
-            new CommandArgs("--display --log={0,1} --={0,2}", args);
-        if (!options.ok()) {
+            new CommandArgs("--display --log={0,1} --hash=(\\d+){0,1}"
+                            + " --threads=(\\d+){0,1}"
+                            + " --eval=(territory|mobility){0,1}"
+                            + " --engine=(pvs|alphabeta|mcts){0,1}"
+                            + " --book={0,1} --ponder"
+                            + " --size=(\\d+){0,1}"
+                            + " --={0,2}", args);
+        if (!options.ok() || !selectBoardSize(options)) {
             System.err.println("Usage: java amazons.Main [--display]"
-                               + " [--log=FILE] [INPUT [OUTPUT]]");
+                               + " [--log=FILE] [--hash=MB]"
+                               + " [--threads=N]"
+                               + " [--eval=territory|mobility]"
+                               + " [--engine=pvs|alphabeta|mcts]"
+                               + " [--book=FILE] [--ponder]"
+                               + " [--size=N]"
+                               + " [INPUT [OUTPUT]]");
+            System.err.printf("  where %d <= N <= %d for --size=N%n",
+                              Board.MIN_SIZE, Board.MAX_SIZE);
             System.exit(1);
         }
 
@@ -54,6 +70,34 @@ public class Main {
 
     }
 
+    /** Select the board size given by the --size option in OPTIONS, if
+     *  any, by setting Board.SIZE_PROPERTY.  This must happen before
+     *  Board is loaded; the constants used here are compiled into this
+     *  class, so checking them does not load it.  Return false, selecting
+     *  nothing, if the size is not one that Board supports. */
+    static boolean selectBoardSize(CommandArgs options) {
+        if (!options.contains("--size")) {
+            return true;
+        }
+        String size = options.getFirst("--size");
+        if (!validBoardSize(size)) {
+            return false;
+        }
+        System.setProperty(Board.SIZE_PROPERTY, size);
+        return true;
+    }
+
+    /** Return true iff SIZE denotes a board size between Board.MIN_SIZE
+     *  and Board.MAX_SIZE. */
+    static boolean validBoardSize(String size) {
+        try {
+            int n = Integer.parseInt(size);
+            return Board.MIN_SIZE <= n && n <= Board.MAX_SIZE;
+        } catch (NumberFormatException excp) {
+            return false;
+        }
+    }
+
     /** Return an appropriate Controller as indicated by OPTIONS. */
     private static Controller getController(CommandArgs options) {
         Player manualPlayer;
@@ -83,6 +127,39 @@ public class Main {
             }
         }
 
-        return new Controller(view, log, reporter, manualPlayer, new AI());
+        boolean mcts = "mcts".equals(options.getFirst("--engine"));
+        int megabytes =
+            mcts ? MCTSPlayer.DEFAULT_MEGABYTES : AI.DEFAULT_HASH_MEGABYTES;
+        if (options.contains("--hash")) {
+            megabytes = Integer.parseInt(options.getFirst("--hash"));
+        }
+        Evaluator evaluator = new TerritoryEvaluator();
+        if ("mobility".equals(options.getFirst("--eval"))) {
+            evaluator = new MobilityEvaluator();
+        }
+        int threads = 1;
+        if (options.contains("--threads")) {
+            threads = Integer.parseInt(options.getFirst("--threads"));
+        }
+        OpeningBook book = null;
+        if (options.contains("--book")) {
+            try {
+                book = new OpeningBook(Paths.get(options.getFirst("--book")));
+            } catch (IOException excp) {
+                throw error("Could not open opening book");
+            }
+        }
+        Player autoPlayer;
+        if (mcts) {
+            autoPlayer = new MCTSPlayer(megabytes, threads, evaluator);
+        } else {
+            autoPlayer = new AI(megabytes, threads, evaluator, book,
+                                options.contains("--ponder"),
+                                !"alphabeta".equals(
+                                    options.getFirst("--engine")));
+        }
+
+        return new Controller(view, log, reporter, manualPlayer,
+                              autoPlayer);
     }
 }
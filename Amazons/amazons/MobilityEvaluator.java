@@ -0,0 +1,20 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** An Evaluator that scores a position by the difference between the
+ *  numbers of legal moves of White and Black.
+ *  @author Eileen Wang
+ */
+class MobilityEvaluator implements Evaluator {
+
+    @Override
+    public int score(Board board) {
+        return board.countMoves(WHITE) - board.countMoves(BLACK);
+    }
+
+    @Override
+    public Evaluator create() {
+        return new MobilityEvaluator();
+    }
+}
@@ -1,5 +1,6 @@
 package amazons;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 
@@ -37,25 +38,70 @@ final class Move {
         return _spear;
     }
 
-    /** Return the unique Move FROM-TO(SPEAR). */
+    /** Return my packed representation (see pack). */
+    int packed() {
+        return pack(_from.index(), _to.index(), _spear.index());
+    }
+
+    /** Return the packed representation of the move FROM-TO(SPEAR), where
+     *  FROM, TO, and SPEAR are square indices.  Packed moves hold the
+     *  three indices in successive 7-bit fields, FROM lowest, and are
+     *  what the search engine uses in place of Move objects. */
+    static int pack(int from, int to, int spear) {
+        return from | (to << PACKED_BITS) | (spear << (2 * PACKED_BITS));
+    }
+
+    /** Return the index of the square moved from in packed move MOVE. */
+    static int from(int move) {
+        return move & PACKED_MASK;
+    }
+
+    /** Return the index of the square moved to in packed move MOVE. */
+    static int to(int move) {
+        return (move >>> PACKED_BITS) & PACKED_MASK;
+    }
+
+    /** Return the index of the spear's square in packed move MOVE. */
+    static int spear(int move) {
+        return (move >>> (2 * PACKED_BITS)) & PACKED_MASK;
+    }
+
+    /** Return the unique Move whose packed representation is MOVE. */
+    static Move mv(int move) {
+        return mv(Square.sq(from(move)), Square.sq(to(move)),
+                  Square.sq(spear(move)));
+    }
+
+    /** Return the unique Move FROM-TO(SPEAR), or null if FROM-TO or
+     *  TO-SPEAR is not a queen move.  May be called concurrently from
+     *  several threads. */
     static Move mv(Square from, Square to, Square spear) {
-        if (MOVES[from.index()][to.index()][spear.index()] == null) {
-            MOVES[from.index()][to.index()][spear.index()] =
-                new Move(from, to, spear);
+        int base = BASE[from.index() * Bits.SQUARES + to.index()];
+        int slot = SLOT[to.index() * Bits.SQUARES + spear.index()];
+        if (base < 0 || slot < 0) {
+            return null;
         }
-        return MOVES[from.index()][to.index()][spear.index()];
+        int k = base + slot;
+        Move result = MOVES.get(k);
+        if (result == null) {
+            result = new Move(from, to, spear);
+            if (!MOVES.compareAndSet(k, null, result)) {
+                result = MOVES.get(k);
+            }
+        }
+        return result;
     }
 
     /** Return the Move denoted by STR, if STR denotes a move with
      *  valid syntax in which the piece move and spear throw are proper
      *  queen moves, and null otherwise. */
     static Move mv(String str) {
-        _moveMatcher.reset(str);
-        if (_moveMatcher.matches()) {
-            int k = _moveMatcher.group(1) != null ? 1 : 4;
-            Square from = sq(_moveMatcher.group(k)),
-                to = sq(_moveMatcher.group(k + 1)),
-                spear = sq(_moveMatcher.group(k + 2));
+        Matcher moveMatcher = MOVE_PATTERN.matcher(str);
+        if (moveMatcher.matches()) {
+            int k = moveMatcher.group(1) != null ? 1 : 4;
+            Square from = sq(moveMatcher.group(k)),
+                to = sq(moveMatcher.group(k + 1)),
+                spear = sq(moveMatcher.group(k + 2));
             if (from.isQueenMove(to) && to.isQueenMove(spear)) {
                 return mv(from, to, spear);
             }
@@ -66,29 +112,73 @@ final class Move {
     /** Return true iff STR has the right format for a Move, ignoring whether
      *  its piece-move and spear-throw are valid queen moves. */
     static boolean isGrammaticalMove(String str) {
-        _moveMatcher.reset(str);
-        return _moveMatcher.matches();
+        return MOVE_PATTERN.matcher(str).matches();
     }
 
     @Override
     public String toString() {
-        return _str;
+        String str = _str;
+        if (str == null) {
+            str = _from + "-" + _to + "(" + _spear + ")";
+            _str = str;
+        }
+        return str;
     }
 
     /** Construct the Move FROM-TO(SPEAR). */
     private Move(Square from, Square to, Square spear) {
         _from = from; _to = to; _spear = spear;
-        _str = String.format("%s-%s(%s)", from, to, spear);
     }
 
-    /** The cache of all Moves created. */
-    private static final Move[][][] MOVES = new Move[100][100][100];
+    /** Width of each square field in a packed move. */
+    static final int PACKED_BITS = 7;
+    /** Mask for one square field of a packed move. */
+    private static final int PACKED_MASK = (1 << PACKED_BITS) - 1;
+
+    /** SLOT[s * Bits.SQUARES + t] is the position of square t among the
+     *  squares that are a queen move away from square s (in index order),
+     *  or -1 if s-t is not a queen move. */
+    private static final int[] SLOT = new int[Bits.SQUARES * Bits.SQUARES];
+
+    /** BASE[f * Bits.SQUARES + t] is the position in MOVES of the first
+     *  move f-t(s), or -1 if f-t is not a queen move.  The moves f-t(s)
+     *  occupy consecutive positions, ordered by SLOT. */
+    private static final int[] BASE = new int[Bits.SQUARES * Bits.SQUARES];
+
+    /** The cache of all Moves created, indexed densely by BASE and SLOT,
+     *  and filled in on demand. */
+    private static final AtomicReferenceArray<Move> MOVES;
+
+    static {
+        int[] targets = new int[Bits.SQUARES];
+        for (int s = 0; s < Bits.SQUARES; s += 1) {
+            for (int t = 0; t < Bits.SQUARES; t += 1) {
+                if (sq(s).isQueenMove(sq(t))) {
+                    SLOT[s * Bits.SQUARES + t] = targets[s];
+                    targets[s] += 1;
+                } else {
+                    SLOT[s * Bits.SQUARES + t] = -1;
+                }
+            }
+        }
+        int size;
+        size = 0;
+        for (int f = 0; f < Bits.SQUARES; f += 1) {
+            for (int t = 0; t < Bits.SQUARES; t += 1) {
+                if (SLOT[f * Bits.SQUARES + t] >= 0) {
+                    BASE[f * Bits.SQUARES + t] = size;
+                    size += targets[t];
+                } else {
+                    BASE[f * Bits.SQUARES + t] = -1;
+                }
+            }
+        }
+        MOVES = new AtomicReferenceArray<>(size);
+    }
 
     /** The components of a Move. */
     private final Square _from, _to, _spear;
-    /** The printed form of a Move. */
+    /** The printed form of a Move, computed when first needed.  Racing
+     *  threads may each compute it, but will agree on its value. */
     private String _str;
-    /**  A utility Matcher for moves, using MOVE_PATTERN. */
-    private static Matcher _moveMatcher = MOVE_PATTERN.matcher("");
 }
-
@@ -0,0 +1,227 @@
+package amazons;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+/** A read-only table of precomputed moves for positions near the start
+ *  of the game.  A book is a file holding a HEADER_BYTES header (MAGIC
+ *  and the number of entries) followed by entries of ENTRY_BYTES bytes,
+ *  each containing the Board.hash() of a position, the packed move (see
+ *  Move.pack) to play there, and the depth of the search that chose it,
+ *  sorted by hash.  The file is memory-mapped, so opening it costs
+ *  almost nothing however large it is, and a lookup is a binary search
+ *  touching a handful of pages.
+ *
+ *  The main program of this class builds or extends a book by
+ *  self-play.
+ *  @author Eileen Wang
+ */
+class OpeningBook {
+
+    /** A book containing the entries in FILE. */
+    OpeningBook(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            _entries = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                   channel.size());
+        }
+        if (_entries.capacity() < HEADER_BYTES
+            || _entries.getLong(0) != MAGIC) {
+            throw new IOException("not an opening book: " + file);
+        }
+        _size = (int) _entries.getLong(8);
+        if (_entries.capacity() < HEADER_BYTES + (long) _size * ENTRY_BYTES) {
+            throw new IOException("truncated opening book: " + file);
+        }
+    }
+
+    /** Return the number of entries in this book. */
+    int size() {
+        return _size;
+    }
+
+    /** Return the packed move recorded for the position with hash KEY,
+     *  or 0 if there is none. */
+    int lookup(long key) {
+        int k = find(key);
+        return k < 0 ? 0 : _entries.getInt(offset(k) + 8);
+    }
+
+    /** Return a legal move recorded for the position on BOARD, or null
+     *  if there is none.  The legality check guards against the rare
+     *  hash collision. */
+    Move lookup(Board board) {
+        int packed = lookup(board.hash());
+        if (packed == 0) {
+            return null;
+        }
+        Move move = Move.mv(packed);
+        if (move == null || board.get(move.from()) != board.turn()
+            || !board.isLegal(move)) {
+            return null;
+        }
+        return move;
+    }
+
+    /** Return the search depth recorded for the position with hash KEY,
+     *  or -1 if there is none. */
+    int depth(long key) {
+        int k = find(key);
+        return k < 0 ? -1 : _entries.getInt(offset(k) + 12);
+    }
+
+    /** Return the entry number for the position with hash KEY, or -1 if
+     *  there is none. */
+    private int find(long key) {
+        int lo = 0, hi = _size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midKey = _entries.getLong(offset(mid));
+            if (midKey < key) {
+                lo = mid + 1;
+            } else if (midKey > key) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Return the byte offset of entry K. */
+    private static int offset(int k) {
+        return HEADER_BYTES + k * ENTRY_BYTES;
+    }
+
+    /** Write a book to FILE containing the N entries with hashes KEYS,
+     *  packed moves MOVES, and search depths DEPTHS, which need not be
+     *  sorted.  The file is replaced only once it is complete. */
+    static void write(Path file, long[] keys, int[] moves, int[] depths,
+                      int n) throws IOException {
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i += 1) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> Long.compare(keys[i], keys[j]));
+        ByteBuffer buffer =
+            ByteBuffer.allocate(HEADER_BYTES + n * ENTRY_BYTES);
+        buffer.putLong(MAGIC).putLong(n);
+        for (int i : order) {
+            buffer.putLong(keys[i]).putInt(moves[i]).putInt(depths[i]);
+        }
+        buffer.flip();
+        Path temp = Paths.get(file + ".tmp");
+        try (FileChannel channel =
+             FileChannel.open(temp, StandardOpenOption.CREATE,
+                              StandardOpenOption.WRITE,
+                              StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /** Build or extend a book.  ARGS are FILE GAMES PLIES SECONDS
+     *  [SEED].  Plays GAMES games against itself, each searching for
+     *  SECONDS seconds per move through the first PLIES moves, and adds
+     *  the move chosen in each position searched to the book in FILE
+     *  (created if absent), replacing existing entries only with ones
+     *  from deeper searches.  To vary the games, each plays one random
+     *  move at a random point in its opening, using a generator seeded
+     *  with SEED. */
+    public static void main(String... args) throws IOException {
+        if (args.length < 4 || args.length > 5) {
+            System.err.println("Usage: java amazons.OpeningBook FILE GAMES"
+                               + " PLIES SECONDS [SEED]");
+            System.exit(1);
+        }
+        Path file = Paths.get(args[0]);
+        int games = Integer.parseInt(args[1]);
+        int plies = Integer.parseInt(args[2]);
+        long millis = (long) (Double.parseDouble(args[3]) * 1000);
+        Random random =
+            new Random(args.length > 4 ? Long.parseLong(args[4]) : 0);
+
+        int capacity = games * plies;
+        int n = 0;
+        OpeningBook old = null;
+        if (Files.exists(file)) {
+            old = new OpeningBook(file);
+            capacity += old.size();
+        }
+        long[] keys = new long[capacity];
+        int[] moves = new int[capacity];
+        int[] depths = new int[capacity];
+        HashMap<Long, Integer> index = new HashMap<>();
+        if (old != null) {
+            for (int k = 0; k < old._size; k += 1) {
+                keys[n] = old._entries.getLong(offset(k));
+                moves[n] = old._entries.getInt(offset(k) + 8);
+                depths[n] = old._entries.getInt(offset(k) + 12);
+                index.put(keys[n], n);
+                n += 1;
+            }
+        }
+
+        Search search =
+            new Search(new TranspositionTable(AI.DEFAULT_HASH_MEGABYTES),
+                       new TerritoryEvaluator());
+        int[] legal = new int[Board.MAX_MOVES];
+        for (int game = 0; game < games; game += 1) {
+            Board board = new Board();
+            int deviation = random.nextInt(plies);
+            for (int ply = 0; ply < plies && board.winner() == null;
+                 ply += 1) {
+                int move;
+                if (ply == deviation) {
+                    int count = board.generateMoves(board.turn(), legal);
+                    move = legal[random.nextInt(count)];
+                } else {
+                    long deadline = System.nanoTime() + millis * 1_000_000;
+                    search.setup(board, deadline, 0, 1);
+                    search.run(deadline);
+                    move = search.bestMove();
+                    int depth = search.completedDepth();
+                    Integer k = index.get(board.hash());
+                    if (k == null) {
+                        k = n;
+                        n += 1;
+                        index.put(board.hash(), k);
+                        depths[k] = -1;
+                    }
+                    if (depths[k] < depth) {
+                        keys[k] = board.hash();
+                        moves[k] = move;
+                        depths[k] = depth;
+                    }
+                }
+                board.makeMove(move);
+            }
+            System.err.printf("game %d: %d entries%n", game + 1, n);
+        }
+        write(file, keys, moves, depths, n);
+    }
+
+    /** Identifies a book file ("AMZNBOOK" in ASCII). */
+    private static final long MAGIC = 0x414d5a4e424f4f4bL;
+    /** Size of the file header. */
+    private static final int HEADER_BYTES = 16;
+    /** Size of one entry. */
+    private static final int ENTRY_BYTES = 16;
+
+    /** The mapped file. */
+    private final MappedByteBuffer _entries;
+    /** Number of entries. */
+    private final int _size;
+
+}
@@ -0,0 +1,260 @@
+package amazons;
+
+import java.util.Iterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/** Counts the positions reachable in exactly a given number of moves
+ *  ("perft", for performance test).  Since the counts from known
+ *  positions never change, they check the move generator, and since
+ *  counting does little but generate and make moves, the rate at which
+ *  it counts measures the generator's speed.
+ *
+ *  A Perft may memoize the counts of subtrees in a table keyed by
+ *  Board.hash(), which pays off because many move orders transpose,
+ *  and may count the subtrees of the first few levels in parallel on a
+ *  ForkJoinPool.  The table is shared by the counting threads without
+ *  locking, in the same way as the TranspositionTable: each entry holds
+ *  a data word and the exclusive or of the data word with its key, so
+ *  that a torn entry is seen as a miss.
+ *  @author Eileen Wang
+ */
+class Perft {
+
+    /** A counter with no table. */
+    Perft() {
+        this(0);
+    }
+
+    /** A counter whose table occupies about MEGABYTES megabytes, or
+     *  that has no table if MEGABYTES is 0. */
+    Perft(int megabytes) {
+        if (megabytes > 0) {
+            long entries = (long) megabytes * (1 << 20) / 16;
+            int size =
+                Integer.highestOneBit((int) Math.min(entries, 1 << 26));
+            _table = new long[2 * size];
+            _mask = size - 1;
+        } else {
+            _table = null;
+            _mask = 0;
+        }
+    }
+
+    /** Return the number of sequences of DEPTH moves from the position
+     *  on BOARD (counting only those that end at DEPTH, not earlier
+     *  wins), which is left unchanged. */
+    long count(Board board, int depth) {
+        Board position = new Board(board);
+        return count(position, depth, new int[Math.max(depth, 1)][]);
+    }
+
+    /** As for count(BOARD, DEPTH), but counting each subtree more than
+     *  SEQUENTIAL_DEPTH moves deep as a separate task on POOL. */
+    long parallelCount(Board board, int depth, ForkJoinPool pool) {
+        return pool.invoke(new Subtree(new Board(board), depth));
+    }
+
+    /** Return the number of sequences of DEPTH moves from the position
+     *  on BOARD, counted by the Move iterator (Board.legalMoves) rather
+     *  than the move generator, and without a table.  Much slower than
+     *  count, this is the reference against which it is checked. */
+    static long iteratorCount(Board board, int depth) {
+        if (depth == 0) {
+            return 1;
+        }
+        long total = 0;
+        Iterator<Move> moves = board.legalMoves();
+        while (moves.hasNext()) {
+            Move move = moves.next();
+            if (depth == 1) {
+                total += 1;
+            } else {
+                board.makeMove(move);
+                total += iteratorCount(board, depth - 1);
+                board.undo();
+            }
+        }
+        return total;
+    }
+
+    /** Return the number of sequences of DEPTH moves from the position
+     *  on BOARD, using BUFFERS[DEPTH - 1] (allocated if null) to hold the
+     *  moves at this level. */
+    private long count(Board board, int depth, int[][] buffers) {
+        if (depth == 0) {
+            return 1;
+        } else if (depth == 1) {
+            return board.countMoves(board.turn());
+        }
+        long key = board.hash();
+        long total = probe(key, depth);
+        if (total >= 0) {
+            return total;
+        }
+        if (buffers[depth - 1] == null) {
+            buffers[depth - 1] = new int[Board.MAX_MOVES];
+        }
+        int[] moves = buffers[depth - 1];
+        int n = board.generateMoves(board.turn(), moves);
+        total = 0;
+        for (int i = 0; i < n; i += 1) {
+            board.makeMove(moves[i]);
+            total += count(board, depth - 1, buffers);
+            board.undo();
+        }
+        store(key, depth, total);
+        return total;
+    }
+
+    /** Return the count recorded for the position with hash KEY at
+     *  DEPTH, or -1 if there is none. */
+    private long probe(long key, int depth) {
+        if (_table == null) {
+            return -1;
+        }
+        int k = 2 * (int) (key & _mask);
+        long data = _table[k + 1];
+        if ((_table[k] ^ data) != key || data == 0
+            || (data & DEPTH_MASK) != depth) {
+            return -1;
+        }
+        return data >>> DEPTH_BITS;
+    }
+
+    /** Record that the position with hash KEY has COUNT sequences of
+     *  DEPTH moves, replacing whatever occupied its slot. */
+    private void store(long key, int depth, long count) {
+        if (_table == null || depth > DEPTH_MASK) {
+            return;
+        }
+        int k = 2 * (int) (key & _mask);
+        long data = (count << DEPTH_BITS) | depth;
+        _table[k] = key ^ data;
+        _table[k + 1] = data;
+    }
+
+    /** A task that counts the sequences of _depth moves from the position
+     *  on _board, which it owns. */
+    private class Subtree extends RecursiveTask<Long> {
+
+        /** A task counting the sequences of DEPTH moves from BOARD. */
+        Subtree(Board board, int depth) {
+            _board = board;
+            _depth = depth;
+        }
+
+        @Override
+        protected Long compute() {
+            if (_depth <= SEQUENTIAL_DEPTH) {
+                return count(_board, _depth, new int[_depth][]);
+            }
+            long key = _board.hash();
+            long total = probe(key, _depth);
+            if (total >= 0) {
+                return total;
+            }
+            int[] moves = new int[Board.MAX_MOVES];
+            int n = _board.generateMoves(_board.turn(), moves);
+            Subtree[] children = new Subtree[n];
+            for (int i = 0; i < n; i += 1) {
+                Board child = new Board(_board);
+                child.makeMove(moves[i]);
+                children[i] = new Subtree(child, _depth - 1);
+                children[i].fork();
+            }
+            total = 0;
+            for (Subtree child : children) {
+                total += child.join();
+            }
+            store(key, _depth, total);
+            return total;
+        }
+
+        /** Version of my serialized form.  Subtrees are never
+         *  serialized, but RecursiveTask is Serializable. */
+        private static final long serialVersionUID = 1L;
+
+        /** The position counted. */
+        private final Board _board;
+        /** The number of moves counted. */
+        private final int _depth;
+    }
+
+    /** Count the positions DEPTH moves from the position after MOVES,
+     *  and print the count, the time taken, and the rate.  ARGS are
+     *  [--hash=MB] [--parallel] [--verify] DEPTH [MOVES...]; --verify
+     *  also counts with the Move iterator and reports whether the two
+     *  counts agree. */
+    public static void main(String... args) {
+        int megabytes = 0;
+        boolean parallel = false, verify = false;
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            if (args[k].startsWith("--hash=")) {
+                megabytes = Integer.parseInt(args[k].substring(7));
+            } else if (args[k].equals("--parallel")) {
+                parallel = true;
+            } else if (args[k].equals("--verify")) {
+                verify = true;
+            } else {
+                usage();
+            }
+        }
+        if (k >= args.length) {
+            usage();
+        }
+        int depth = Integer.parseInt(args[k]);
+        Board board = new Board();
+        for (k += 1; k < args.length; k += 1) {
+            Move move = Move.mv(args[k]);
+            if (move == null || !board.isLegal(move)) {
+                System.err.printf("Illegal move: %s%n", args[k]);
+                System.exit(1);
+            }
+            board.makeMove(move);
+        }
+        Perft perft = new Perft(megabytes);
+        long start = System.nanoTime();
+        long nodes = parallel
+            ? perft.parallelCount(board, depth, ForkJoinPool.commonPool())
+            : perft.count(board, depth);
+        System.out.println(report(depth, nodes, System.nanoTime() - start));
+        if (verify) {
+            long expected = iteratorCount(board, depth);
+            System.out.printf("iterator count %d: %s%n", expected,
+                              expected == nodes ? "agrees" : "DISAGREES");
+            System.exit(expected == nodes ? 0 : 1);
+        }
+    }
+
+    /** Return a description of a count of NODES positions at DEPTH,
+     *  taking NANOS nanoseconds. */
+    static String report(int depth, long nodes, long nanos) {
+        return String.format("perft %d: %d nodes in %d ms (%d nodes/s)",
+                             depth, nodes, nanos / 1_000_000,
+                             nodes * 1_000_000_000L / Math.max(nanos, 1));
+    }
+
+    /** Print a usage message and exit. */
+    private static void usage() {
+        System.err.println("Usage: java amazons.Perft [--hash=MB]"
+                           + " [--parallel] [--verify] DEPTH [MOVES...]");
+        System.exit(1);
+    }
+
+    /** Width of the depth field in a data word, whose remaining bits hold
+     *  the count. */
+    private static final int DEPTH_BITS = 6;
+    /** Mask selecting the depth from a data word. */
+    private static final long DEPTH_MASK = (1 << DEPTH_BITS) - 1;
+    /** Depth at and below which a Subtree counts sequentially. */
+    private static final int SEQUENTIAL_DEPTH = 2;
+
+    /** Entries, each a check word followed by a data word, or null if
+     *  counts are not memoized. */
+    private final long[] _table;
+    /** Mask selecting an entry from a hash. */
+    private final int _mask;
+
+}
@@ -36,6 +36,53 @@ abstract class Player {
      *  is not null. */
     abstract String myMove();
 
+    /** Called by my controller after MOVE, by either side, has been made
+     *  on its board.  Does nothing by default. */
+    void moveMade(Move move) {
+    }
+
+    /** Called by my controller when it will ask me for no more moves in
+     *  the current game: when it replaces me, starts a new game, or the
+     *  game ends.  Stops any work I am doing in the background.  Does
+     *  nothing by default. */
+    void stopThinking() {
+    }
+
+    /** Return counts of the work I did choosing my last move (or have
+     *  done so far on my current one), or null if I keep none.  May be
+     *  called from any thread, and returns a copy that does not change.
+     *  Returns null by default. */
+    SearchStats stats() {
+        return null;
+    }
+
+    /** Return the time in milliseconds I should aim to spend choosing a
+     *  move from BOARD, given the time left on my clock (see
+     *  moveBudget(long, int)). */
+    long moveBudget(Board board) {
+        return moveBudget(_controller.timeLeft(_myPiece), board.numMoves());
+    }
+
+    /** Return the time in milliseconds a player should aim to spend
+     *  choosing a move after MOVES moves have been made, with LEFT
+     *  milliseconds on its clock, or with no clock if LEFT is negative.
+     *  Without a clock, this is DEFAULT_MOVE_MILLIS.  With one, it is an
+     *  even share of the remaining time over the moves the player might
+     *  yet have to make. */
+    static long moveBudget(long left, int moves) {
+        if (left < 0) {
+            return DEFAULT_MOVE_MILLIS;
+        }
+        int empty = Board.SIZE * Board.SIZE - 8 - moves;
+        return left / Math.max(MIN_MOVES_TO_GO, empty / 4);
+    }
+
+    /** Time allowed per move, in milliseconds, when there is no game
+     *  clock. */
+    static final long DEFAULT_MOVE_MILLIS = 500;
+    /** The fewest moves over which remaining clock time is shared. */
+    static final int MIN_MOVES_TO_GO = 8;
+
     /** My Controller. */
     protected Controller _controller;
     /** The Piece I play (WHITE or BLACK). */
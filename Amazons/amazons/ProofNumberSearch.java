@@ -0,0 +1,239 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/** A solver that tries to prove which side wins a position, using
+ *  depth-first proof-number search (df-pn).  Each position has a proof
+ *  number (phi), the least number of unresolved positions that must be
+ *  shown to be wins to prove it a win for the side to move, and a
+ *  disproof number (delta), the least number that must be shown losses
+ *  to prove it a loss.  A position's phi is the least delta among its
+ *  children's, and its delta is the sum of their phis.  The search
+ *  always descends towards the most-proving child, and backs up as soon
+ *  as either number exceeds thresholds derived from its parent, so it
+ *  follows the narrow, deep lines typical of late positions instead of
+ *  searching every line to a fixed depth.  Numbers for positions off the
+ *  current path are kept in a fixed-size transposition table.  Positions
+ *  whose queens are separated are settled directly by an
+ *  EndgameSolver.
+ *  @author Eileen Wang
+ */
+class ProofNumberSearch {
+
+    /** A solver whose transposition table occupies about MEGABYTES
+     *  megabytes. */
+    ProofNumberSearch(int megabytes) {
+        long entries = Math.max(1, (long) megabytes * (1 << 20) / 16);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 26));
+        _keys = new long[size];
+        _numbers = new long[size];
+        _mask = size - 1;
+    }
+
+    /** Try to prove the outcome of POSITION, giving up at DEADLINE (in
+     *  System.nanoTime() units), which must be less than 2**62
+     *  nanoseconds (about 146 years) away, since it is compared with the
+     *  clock by subtraction, as nanoTime requires.  Return the winner if
+     *  it is proven, and otherwise null. */
+    Piece solve(Board position, long deadline) {
+        _board.copy(position);
+        _deadline = deadline;
+        _aborted = false;
+        _nodes = 0;
+        _bestMove = 0;
+        Arrays.fill(_numbers, 0);
+        long root = leaf();
+        if (root == 0) {
+            mid(INFINITY, INFINITY, 0);
+            root = lookup(_board.hash());
+        }
+        if (root == 0) {
+            return null;
+        } else if (phi(root) == 0) {
+            findWinningMove();
+            return _board.turn();
+        } else if (delta(root) == 0) {
+            return _board.turn().opponent();
+        }
+        return null;
+    }
+
+    /** Return the winning packed move found by the last successful
+     *  solve for the side to move, or 0 if it proved a loss or there was
+     *  none. */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /** Return the number of positions expanded by the last solve. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Expand the position on my board, at distance PLY from the root,
+     *  until its proof number reaches THPHI or its disproof number
+     *  reaches THDELTA (or the search is abandoned), and record its
+     *  numbers. */
+    private void mid(int thPhi, int thDelta, int ply) {
+        _nodes += 1;
+        if (System.nanoTime() - _deadline >= 0) {
+            _aborted = true;
+        }
+        if (_movesBuffers[ply] == null) {
+            _movesBuffers[ply] = new int[Board.MAX_MOVES];
+        }
+        int[] moves = _movesBuffers[ply];
+        int n = _board.generateMoves(_board.turn(), moves);
+        long key = _board.hash();
+        while (true) {
+            int minDelta, secondDelta, best, sumPhi, bestPhi;
+            minDelta = secondDelta = INFINITY;
+            best = sumPhi = bestPhi = 0;
+            for (int i = 0; i < n; i += 1) {
+                _board.makeMove(moves[i]);
+                long child = numbers();
+                _board.undo();
+                int childPhi = phi(child), childDelta = delta(child);
+                sumPhi = Math.min(INFINITY, sumPhi + childPhi);
+                if (childDelta < minDelta) {
+                    secondDelta = minDelta;
+                    minDelta = childDelta;
+                    best = i;
+                    bestPhi = childPhi;
+                } else if (childDelta < secondDelta) {
+                    secondDelta = childDelta;
+                }
+            }
+            if (minDelta >= thPhi || sumPhi >= thDelta || _aborted) {
+                store(key, minDelta, sumPhi);
+                return;
+            }
+            int childThPhi =
+                (int) Math.min(INFINITY, (long) thDelta - sumPhi + bestPhi);
+            int childThDelta =
+                Math.min(thPhi, Math.min(INFINITY - 1, secondDelta) + 1);
+            _board.makeMove(moves[best]);
+            mid(childThPhi, childThDelta, ply + 1);
+            _board.undo();
+        }
+    }
+
+    /** Return the numbers of the position on my board, from the table if
+     *  it is there, and otherwise from leaf(), treating a position about
+     *  which nothing is known as having phi and delta both 1. */
+    private long numbers() {
+        long result = lookup(_board.hash());
+        if (result == 0) {
+            result = leaf();
+            if (result == 0) {
+                return pack(1, 1);
+            }
+            store(_board.hash(), phi(result), delta(result));
+        }
+        return result;
+    }
+
+    /** Return the numbers of the position on my board if it is decided
+     *  without search (the side to move has no moves, or the queens are
+     *  separated and the endgame solver settles it quickly), and
+     *  otherwise 0. */
+    private long leaf() {
+        Piece winner = _board.winner();
+        if (winner == null && _board.numMoves() >= Search.ENDGAME_MIN_MOVES
+            && _endgame.separated(_board)) {
+            _endgame.analyze(_board, ENDGAME_BUDGET);
+            winner = _endgame.winner(_board.turn());
+        }
+        if (winner == null) {
+            return 0;
+        } else if (winner == _board.turn()) {
+            return pack(0, INFINITY);
+        } else {
+            return pack(INFINITY, 0);
+        }
+    }
+
+    /** Set _bestMove to a move from the position on my board to one
+     *  proven lost for the opponent. */
+    private void findWinningMove() {
+        int[] moves = _movesBuffers[0] == null
+            ? new int[Board.MAX_MOVES] : _movesBuffers[0];
+        int n = _board.generateMoves(_board.turn(), moves);
+        for (int i = 0; i < n && _bestMove == 0; i += 1) {
+            _board.makeMove(moves[i]);
+            long child = lookup(_board.hash());
+            if (child == 0) {
+                child = leaf();
+            }
+            if (child != 0 && delta(child) == 0) {
+                _bestMove = moves[i];
+            }
+            _board.undo();
+        }
+    }
+
+    /** Return the stored numbers for the position with hash KEY, or 0 if
+     *  there are none. */
+    private long lookup(long key) {
+        int k = (int) key & _mask;
+        return _keys[k] == key ? _numbers[k] : 0;
+    }
+
+    /** Record PHI and DELTA for the position with hash KEY, replacing any
+     *  entry for another position in its slot.  (Keeping an old entry
+     *  instead could leave the search forever revisiting a position
+     *  whose new numbers it cannot record.) */
+    private void store(long key, int phi, int delta) {
+        int k = (int) key & _mask;
+        _keys[k] = key;
+        _numbers[k] = pack(phi, delta);
+    }
+
+    /** Return PHI and DELTA packed into a long, which is never 0. */
+    private static long pack(int phi, int delta) {
+        return ((long) phi << 32) | delta | NUMBERS_PRESENT;
+    }
+
+    /** Return the proof number in packed NUMBERS. */
+    private static int phi(long numbers) {
+        return (int) (numbers >>> 32) & INFINITY;
+    }
+
+    /** Return the disproof number in packed NUMBERS. */
+    private static int delta(long numbers) {
+        return (int) numbers & INFINITY;
+    }
+
+    /** A proof or disproof number that cannot be reached, all of whose
+     *  bits are ones.  The sum of two numbers never exceeds it. */
+    private static final int INFINITY = Integer.MAX_VALUE >>> 1;
+    /** A bit set in every packed pair of numbers, above the bits used by
+     *  the disproof number. */
+    private static final long NUMBERS_PRESENT = 1L << 31;
+    /** Endgame solver nodes allowed per position. */
+    private static final int ENDGAME_BUDGET = 2000;
+
+    /** Hashes of the positions in each table slot. */
+    private final long[] _keys;
+    /** Packed numbers in each table slot, or 0 if it is empty. */
+    private final long[] _numbers;
+    /** Mask selecting a slot from a hash. */
+    private final int _mask;
+    /** Moves of the positions on the current path, indexed by ply. */
+    private final int[][] _movesBuffers = new int[Bits.SQUARES + 1][];
+    /** Solver for positions in which the queens are separated. */
+    private final EndgameSolver _endgame = new EndgameSolver();
+    /** The position being solved. */
+    private final Board _board = new Board();
+    /** Time at which the current solve is abandoned. */
+    private long _deadline;
+    /** True iff the current solve has been abandoned. */
+    private boolean _aborted;
+    /** Number of positions expanded by the current solve. */
+    private long _nodes;
+    /** Winning move found by the last solve. */
+    private int _bestMove;
+
+}
@@ -0,0 +1,630 @@
+package amazons;
+
+import java.util.Arrays;
+
+import static amazons.Piece.*;
+
+/** An iterative-deepening alpha-beta search over a private copy of a
+ *  Board.  Several Searches may run at once on different threads,
+ *  sharing results through a common TranspositionTable; each keeps its
+ *  own board and move buffers, so that searching allocates nothing.
+ *
+ *  By default, a Search uses principal variation search (PVS): at each
+ *  node it searches the first move with the full window, and the rest
+ *  with a null window that only tests whether they are worse than the
+ *  first, searching again with the full window those that are not.
+ *  Each iteration after the first starts with an aspiration window
+ *  around the previous iteration's value, widened as often as the
+ *  value falls outside it.  A Search may instead use plain alpha-beta,
+ *  for comparison.
+ *  @author Eileen Wang
+ */
+class Search {
+
+    /** A position magnitude indicating a win (for white if positive, black
+     *  if negative). */
+    static final int WINNING_VALUE = Integer.MAX_VALUE - 1;
+    /** A magnitude greater than a normal value. */
+    static final int INFTY = Integer.MAX_VALUE;
+    /** The deepest search performed. */
+    static final int MAX_DEPTH = 30;
+
+    /** A new Search that shares results through TABLE and evaluates
+     *  leaf positions with EVALUATOR, using PVS. */
+    Search(TranspositionTable table, Evaluator evaluator) {
+        this(table, evaluator, true);
+    }
+
+    /** A new Search that shares results through TABLE and evaluates
+     *  leaf positions with EVALUATOR, using PVS and aspiration windows
+     *  iff PVS, and otherwise plain alpha-beta. */
+    Search(TranspositionTable table, Evaluator evaluator, boolean pvs) {
+        this(table, evaluator, pvs, true);
+    }
+
+    /** A new Search, as for Search(TABLE, EVALUATOR, PVS), that orders
+     *  the moves after the hash move by their killer and history scores
+     *  iff ORDERED, and otherwise tries them in the order generated, for
+     *  comparison. */
+    Search(TranspositionTable table, Evaluator evaluator, boolean pvs,
+           boolean ordered) {
+        _table = table;
+        _evaluator = evaluator;
+        _pvs = pvs;
+        _ordered = ordered;
+    }
+
+    /** Prepare to search from a copy of POSITION, abandoning any search
+     *  still running at HARDDEADLINE (in System.nanoTime() units).  This
+     *  is search number VARIATION (0 being the main search) of
+     *  VARIATIONS searching the same position at once; the others start
+     *  at alternating depths and try root moves in rotated orders, so
+     *  that they explore different parts of the tree. */
+    void setup(Board position, long hardDeadline,
+               int variation, int variations) {
+        _board.copy(position);
+        _hardDeadline = hardDeadline;
+        _softDeadline = Long.MAX_VALUE;
+        _variation = variation;
+        _variations = variations;
+        _stopped = false;
+        _aborted = false;
+        _nodes = 0;
+        _bestMove = 0;
+        _bestValue = 0;
+        _completedDepth = 0;
+        _principalVariation = new int[0];
+        _stats.clear();
+        _snapshot = new SearchStats();
+        for (int[] killers : _killers) {
+            Arrays.fill(killers, 0);
+        }
+        Arrays.fill(_queenHistory, 0);
+        Arrays.fill(_spearHistory, 0);
+    }
+
+    /** Search to successively greater depths, recording the result of
+     *  each completed iteration, until the game is decided, the maximum
+     *  depth is reached, the hard deadline passes, stop() is called, or
+     *  an iteration completes after SOFTDEADLINE. */
+    void run(long softDeadline) {
+        run(softDeadline, MAX_DEPTH);
+    }
+
+    /** As for run(SOFTDEADLINE), but searching no deeper than
+     *  DEPTHLIMIT. */
+    void run(long softDeadline, int depthLimit) {
+        _softDeadline = softDeadline;
+        iterate(depthLimit);
+    }
+
+    /** As for run, but with no soft deadline until one is imposed by
+     *  setDeadlines, as when searching on the opponent's time in
+     *  anticipation of their reply. */
+    void ponder() {
+        iterate(MAX_DEPTH);
+    }
+
+    /** Replace the soft and hard deadlines of the search in progress (or
+     *  about to start) with SOFTDEADLINE and HARDDEADLINE.  May be called
+     *  from any thread. */
+    void setDeadlines(long softDeadline, long hardDeadline) {
+        _softDeadline = softDeadline;
+        _hardDeadline = hardDeadline;
+    }
+
+    /** Search to successively greater depths, up to DEPTHLIMIT, as
+     *  described for run. */
+    private void iterate(int depthLimit) {
+        int sense = _board.turn() == WHITE ? 1 : -1;
+        _rootSeparated = _board.numMoves() >= ENDGAME_MIN_MOVES
+            && _endgame.separated(_board);
+        int maxDepth = Math.min(depthLimit, maxDepth());
+        for (int depth = 1 + _variation % 2; depth <= maxDepth;
+             depth += 1) {
+            _rootDepth = depth;
+            long nodes = _nodes, start = System.nanoTime();
+            int value;
+            if (_pvs && _completedDepth > 0) {
+                value = aspirate(depth, sense, _bestValue);
+            } else {
+                value = findMove(_board, depth, true, sense, -INFTY, INFTY);
+            }
+            if (_aborted) {
+                break;
+            }
+            _principalVariation = Arrays.copyOf(_pv[0], _pvLength[0]);
+            _stats.endIteration(depth, _nodes - nodes,
+                                System.nanoTime() - start,
+                                _principalVariation);
+            _snapshot = new SearchStats(stats());
+            _bestMove = _lastFoundMove;
+            _bestValue = value;
+            _completedDepth = depth;
+            if (Math.abs(value) == WINNING_VALUE
+                || System.nanoTime() >= _softDeadline) {
+                break;
+            }
+        }
+    }
+
+    /** Search my board to DEPTH as for findMove with SENSE, first within
+     *  an aspiration window of ASPIRATION_WINDOW on either side of
+     *  GUESS, and again with a window twice as wide on the failing side
+     *  whenever the value falls outside it, until it falls inside or
+     *  the window is unbounded.  Return the value. */
+    private int aspirate(int depth, int sense, int guess) {
+        long delta = ASPIRATION_WINDOW;
+        long alpha = guess - delta, beta = guess + delta;
+        if (Math.abs(guess) >= WINNING_VALUE) {
+            alpha = -INFTY;
+            beta = INFTY;
+        }
+        while (true) {
+            int lo = (int) Math.max(alpha, -INFTY),
+                hi = (int) Math.min(beta, INFTY);
+            int value = findMove(_board, depth, true, sense, lo, hi);
+            if (_aborted) {
+                return 0;
+            } else if (value <= lo && lo > -INFTY) {
+                delta *= 2;
+                alpha = value - delta;
+            } else if (value >= hi && hi < INFTY) {
+                delta *= 2;
+                beta = value + delta;
+            } else {
+                return value;
+            }
+            _stats.countResearch();
+        }
+    }
+
+    /** Return the line of play expected by the deepest completed
+     *  iteration, as packed moves starting with bestMove().  It may be
+     *  shorter than that iteration's depth, since it stops where the
+     *  search did, as at positions answered from the transposition
+     *  table. */
+    int[] principalVariation() {
+        return _principalVariation.clone();
+    }
+
+    /** Cause any search in progress to stop as soon as possible.  May be
+     *  called from any thread. */
+    void stop() {
+        _stopped = true;
+    }
+
+    /** Return the best packed move found by the deepest completed
+     *  iteration, or 0 if none has completed. */
+    int bestMove() {
+        return _bestMove;
+    }
+
+    /** Return the value of the position found by the deepest completed
+     *  iteration. */
+    int bestValue() {
+        return _bestValue;
+    }
+
+    /** Return the depth of the deepest completed iteration, or 0 if none
+     *  has completed. */
+    int completedDepth() {
+        return _completedDepth;
+    }
+
+    /** Return the number of nodes visited since setup. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the counts of the work done since setup.  They are updated
+     *  without synchronization, so are only exact once the search has
+     *  finished, and only in the thread that ran it. */
+    SearchStats stats() {
+        _stats.setNodes(_nodes);
+        return _stats;
+    }
+
+    /** Return a copy of the counts of the work done since setup, as they
+     *  stood when the last iteration completed.  May be called from any
+     *  thread while the search runs; the copy never changes. */
+    SearchStats snapshot() {
+        return _snapshot;
+    }
+
+    /** Return true iff the current search must be abandoned because it
+     *  has been stopped or its hard deadline has passed, checking only
+     *  every CLOCK_CHECK_INTERVAL calls.  The main search's first
+     *  iteration is never abandoned, so that there is always a move to
+     *  return. */
+    private boolean timeUp() {
+        if (!_aborted) {
+            _nodes += 1;
+            if (_nodes % CLOCK_CHECK_INTERVAL == 0
+                && (_completedDepth > 0 || _variation > 0)
+                && (_stopped || System.nanoTime() >= _hardDeadline)) {
+                _aborted = true;
+            }
+        }
+        return _aborted;
+    }
+
+    /** Find a move from position BOARD and return its value, recording
+     *  the move found in _lastFoundMove iff SAVEMOVE. The move
+     *  should have maximal value or have value > BETA if SENSE==1,
+     *  and minimal value or value < ALPHA if SENSE==-1. Searches up to
+     *  DEPTH levels.  Searching at level 0 simply returns a static estimate
+     *  of the board value and does not set _lastMoveFound.  Moves at
+     *  DEPTH are generated into _moveBuffers[DEPTH], so that the search
+     *  allocates nothing.  If the search runs out of time, sets _aborted
+     *  and returns a meaningless value. */
+    private int findMove(Board board, int depth, boolean saveMove, int sense,
+                         int alpha, int beta) {
+        int ply = _rootDepth - depth;
+        _pvLength[ply] = 0;
+        if (timeUp()) {
+            return 0;
+        } else if (depth == 0 || board.winner() != null) {
+            return staticScore(board);
+        }
+        long entry = _table.probe(board.hash());
+        _stats.countProbe(entry != 0);
+        int hashMove = TranspositionTable.move(entry);
+        if (entry != 0 && !saveMove
+            && TranspositionTable.depth(entry) >= depth) {
+            int score = TranspositionTable.score(entry);
+            switch (TranspositionTable.bound(entry)) {
+            case TranspositionTable.EXACT:
+                return score;
+            case TranspositionTable.LOWER:
+                if (score >= beta) {
+                    return score;
+                }
+                break;
+            default:
+                if (score <= alpha) {
+                    return score;
+                }
+                break;
+            }
+        }
+        int[] moves = _moveBuffers[depth];
+        int[] order = _orderBuffers[depth];
+        int numMoves = board.generateMoves(board.turn(), moves);
+        scoreMoves(moves, order, numMoves, hashMove, ply);
+        boolean ordered = true;
+        if (saveMove && _variation > 0 && numMoves > 2) {
+            selectBest(moves, order, 0, numMoves);
+            rotate(moves, 1, numMoves,
+                   _variation * (numMoves - 1) / _variations);
+            ordered = false;
+        }
+        int alpha0 = alpha, beta0 = beta;
+        int bestMove = 0;
+        int bestValue = -sense * INFTY;
+        for (int i = 0; i < numMoves; i += 1) {
+            if (ordered && i < SELECTED_MOVES) {
+                selectBest(moves, order, i, numMoves);
+            }
+            board.makeMove(moves[i]);
+            int response = searchChild(board, depth - 1, sense, i == 0,
+                                       alpha, beta);
+            board.undo();
+            if (_aborted) {
+                return 0;
+            }
+            if (sense == 1 && response > bestValue) {
+                bestMove = moves[i];
+                bestValue = response;
+                alpha = Math.max(alpha, response);
+                extendPV(ply, bestMove);
+            } else if (sense == -1 && response < bestValue) {
+                bestMove = moves[i];
+                bestValue = response;
+                beta = Math.min(beta, response);
+                extendPV(ply, bestMove);
+            }
+            if (beta <= alpha) {
+                _stats.countCutoff(i == 0);
+                recordCutoff(moves[i], depth, ply);
+                break;
+            }
+        }
+        int bound;
+        if (bestValue <= alpha0) {
+            bound = TranspositionTable.UPPER;
+        } else if (bestValue >= beta0) {
+            bound = TranspositionTable.LOWER;
+        } else {
+            bound = TranspositionTable.EXACT;
+        }
+        _table.store(board.hash(), depth, bound, bestValue, bestMove);
+        if (saveMove) {
+            _lastFoundMove = bestMove;
+        }
+
+        return bestValue;
+    }
+
+    /** Return the value of the position on BOARD, searched to DEPTH by
+     *  findMove for the opponent of the player whose sense is SENSE,
+     *  within the window ALPHA .. BETA of its parent.  Under PVS, a move
+     *  other than the FIRST is searched with a null window just above
+     *  ALPHA (or below BETA, for the minimizing player) that only shows
+     *  whether it is better than the best so far, and again with the
+     *  full window only if it is.  Searches shallower than
+     *  PVS_MIN_DEPTH always use the full window. */
+    private int searchChild(Board board, int depth, int sense,
+                            boolean first, int alpha, int beta) {
+        if (!_pvs || first || depth < PVS_MIN_DEPTH
+            || beta - (long) alpha <= 1) {
+            return findMove(board, depth, false, -sense, alpha, beta);
+        }
+        int response;
+        if (sense == 1) {
+            response = findMove(board, depth, false, -sense, alpha,
+                                alpha + 1);
+        } else {
+            response = findMove(board, depth, false, -sense, beta - 1,
+                                beta);
+        }
+        if (!_aborted && response > alpha && response < beta) {
+            _stats.countResearch();
+            response = findMove(board, depth, false, -sense, alpha, beta);
+        }
+        return response;
+    }
+
+    /** Make MOVE, followed by the principal variation found at PLY + 1,
+     *  the principal variation at PLY.  Called only when MOVE strictly
+     *  improves on the best so far, since a move that merely ties it may
+     *  have been searched only with a null window, which leaves the line
+     *  at PLY + 1 unverified. */
+    private void extendPV(int ply, int move) {
+        _pv[ply][0] = move;
+        System.arraycopy(_pv[ply + 1], 0, _pv[ply], 1, _pvLength[ply + 1]);
+        _pvLength[ply] = _pvLength[ply + 1] + 1;
+    }
+
+    /** Set ORDER[0 .. N-1] to the ordering priorities of MOVES[0 .. N-1]
+     *  at PLY, given that HASHMOVE (0 if none) is the best move recorded
+     *  in the transposition table.  The hash move comes first, then the
+     *  killer moves at PLY, then the others by their history scores.
+     *  Unless I am ordered, all but the hash move have priority 0. */
+    private void scoreMoves(int[] moves, int[] order, int n,
+                            int hashMove, int ply) {
+        int killer0 = _killers[ply][0], killer1 = _killers[ply][1];
+        for (int i = 0; i < n; i += 1) {
+            int move = moves[i];
+            if (move == hashMove) {
+                order[i] = HASH_MOVE_ORDER;
+            } else if (!_ordered) {
+                order[i] = 0;
+            } else if (move == killer0) {
+                order[i] = KILLER_ORDER;
+            } else if (move == killer1) {
+                order[i] = KILLER_ORDER - 1;
+            } else {
+                order[i] = _queenHistory[queenIndex(move)]
+                    + _spearHistory[spearIndex(move)];
+            }
+        }
+    }
+
+    /** Exchange the entry of MOVES[K .. N-1] having the largest priority
+     *  in ORDER with MOVES[K], and likewise in ORDER. */
+    private static void selectBest(int[] moves, int[] order, int k, int n) {
+        int best;
+        best = k;
+        for (int i = k + 1; i < n; i += 1) {
+            if (order[i] > order[best]) {
+                best = i;
+            }
+        }
+        int tmp = moves[k];
+        moves[k] = moves[best];
+        moves[best] = tmp;
+        tmp = order[k];
+        order[k] = order[best];
+        order[best] = tmp;
+    }
+
+    /** Record that MOVE caused a cutoff in a search to DEPTH at PLY,
+     *  making it a killer move at PLY and crediting its queen move and
+     *  spear throw in the history tables. */
+    private void recordCutoff(int move, int depth, int ply) {
+        if (_killers[ply][0] != move) {
+            _killers[ply][1] = _killers[ply][0];
+            _killers[ply][0] = move;
+        }
+        int q = queenIndex(move), s = spearIndex(move);
+        _queenHistory[q] += depth * depth;
+        _spearHistory[s] += depth * depth;
+        if (_queenHistory[q] > HISTORY_LIMIT
+            || _spearHistory[s] > HISTORY_LIMIT) {
+            for (int i = 0; i < _queenHistory.length; i += 1) {
+                _queenHistory[i] /= 2;
+                _spearHistory[i] /= 2;
+            }
+        }
+    }
+
+    /** Return the index in _queenHistory of the queen move in packed move
+     *  MOVE. */
+    private static int queenIndex(int move) {
+        return Move.from(move) * Bits.SQUARES + Move.to(move);
+    }
+
+    /** Return the index in _spearHistory of the spear throw in packed move
+     *  MOVE. */
+    private static int spearIndex(int move) {
+        return Move.to(move) * Bits.SQUARES + Move.spear(move);
+    }
+
+    /** Rotate MOVES[LO .. HI-1] left by K places. */
+    private static void rotate(int[] moves, int lo, int hi, int k) {
+        reverse(moves, lo, lo + k);
+        reverse(moves, lo + k, hi);
+        reverse(moves, lo, hi);
+    }
+
+    /** Reverse MOVES[LO .. HI-1]. */
+    private static void reverse(int[] moves, int lo, int hi) {
+        for (hi -= 1; lo < hi; lo += 1, hi -= 1) {
+            int tmp = moves[lo];
+            moves[lo] = moves[hi];
+            moves[hi] = tmp;
+        }
+    }
+
+    /** Return the maximum depth worth searching from my board: no deeper
+     *  than MAX_DEPTH, nor than the number of empty squares. */
+    private int maxDepth() {
+        return Math.min(MAX_DEPTH,
+                        Board.SIZE * Board.SIZE - 8 - _board.numMoves());
+    }
+
+    /** Return a heuristic value for BOARD.  Once the queens have been
+     *  separated, this is exact if the endgame solver can decide the
+     *  game within ENDGAME_LEAF_BUDGET nodes (see endgameScore).  Since
+     *  moves only ever fill squares, every position below a separated
+     *  root is separated too, and is not checked again. */
+    private int staticScore(Board board) {
+        Piece winner = board.winner();
+        if (winner == BLACK) {
+            return -WINNING_VALUE;
+        } else if (winner == WHITE) {
+            return WINNING_VALUE;
+        } else if (_rootSeparated
+                   || (board.numMoves() >= ENDGAME_MIN_MOVES
+                       && _endgame.separated(board))) {
+            return endgameScore(board);
+        }
+        _stats.countEvaluation();
+        return _evaluator.score(board);
+    }
+
+    /** Return the value of BOARD, on which the queens are separated:
+     *  exact if the endgame solver decides the game within
+     *  ENDGAME_LEAF_BUDGET nodes, and otherwise heuristic.  Since the
+     *  solver costs many evaluations, the value is stored in the
+     *  transposition table as exact at depth 0 (which no search of
+     *  greater depth will take for its own), and taken from there, or
+     *  from any exact entry for a decided game, when it is found. */
+    private int endgameScore(Board board) {
+        long key = board.hash();
+        long entry = _table.probe(key);
+        _stats.countProbe(entry != 0);
+        if (entry != 0
+            && TranspositionTable.bound(entry) == TranspositionTable.EXACT) {
+            int score = TranspositionTable.score(entry);
+            if (TranspositionTable.depth(entry) == 0
+                || Math.abs(score) == WINNING_VALUE) {
+                return score;
+            }
+        }
+        _endgame.analyze(board, ENDGAME_LEAF_BUDGET);
+        Piece winner = _endgame.winner(board.turn());
+        int value;
+        if (winner == BLACK) {
+            value = -WINNING_VALUE;
+        } else if (winner == WHITE) {
+            value = WINNING_VALUE;
+        } else {
+            _stats.countEvaluation();
+            value = _evaluator.score(board);
+        }
+        _table.store(key, 0, TranspositionTable.EXACT, value, 0);
+        return value;
+    }
+
+    /** The fewest moves after which the queens might be separated; the
+     *  endgame solver is not tried before then. */
+    static final int ENDGAME_MIN_MOVES = 20;
+    /** Endgame solver nodes allowed per leaf. */
+    private static final int ENDGAME_LEAF_BUDGET = 2000;
+    /** Half the width of the first aspiration window. */
+    private static final int ASPIRATION_WINDOW = 128;
+    /** The least depth at which moves after the first are searched with
+     *  a null window.  Below it, a failed test and the re-search it
+     *  forces cost more than a full-window search. */
+    private static final int PVS_MIN_DEPTH = 2;
+    /** Number of nodes between checks of the clock. */
+    private static final int CLOCK_CHECK_INTERVAL = 256;
+    /** Ordering priorities of the hash move and first killer move. */
+    private static final int
+        HASH_MOVE_ORDER = Integer.MAX_VALUE,
+        KILLER_ORDER = Integer.MAX_VALUE - 2;
+    /** History scores are halved when one exceeds this. */
+    private static final int HISTORY_LIMIT = 1 << 28;
+    /** Number of moves at each node put in order of priority before they
+     *  are searched.  The rest are searched in the order generated,
+     *  since a node that has not been cut off by then rarely will be. */
+    private static final int SELECTED_MOVES = 16;
+
+    /** True iff I use PVS and aspiration windows. */
+    private final boolean _pvs;
+    /** True iff I order moves by their killer and history scores. */
+    private final boolean _ordered;
+    /** The table shared with other Searches. */
+    private final TranspositionTable _table;
+    /** Evaluation function for leaf positions. */
+    private final Evaluator _evaluator;
+    /** Solver for leaves in which the queens are separated. */
+    private final EndgameSolver _endgame = new EndgameSolver();
+    /** My copy of the position being searched. */
+    private final Board _board = new Board();
+    /** Counts of the work done since setup. */
+    private final SearchStats _stats = new SearchStats();
+    /** Copy of _stats published when the last iteration completed. */
+    private volatile SearchStats _snapshot = new SearchStats();
+    /** Per-ply buffers for generated moves, indexed by remaining search
+     *  depth. */
+    private final int[][] _moveBuffers =
+        new int[MAX_DEPTH + 1][Board.MAX_MOVES];
+    /** Ordering priorities of the moves in _moveBuffers. */
+    private final int[][] _orderBuffers =
+        new int[MAX_DEPTH + 1][Board.MAX_MOVES];
+    /** The triangular table of principal variations: _pv[PLY][0 ..
+     *  _pvLength[PLY]-1] is the best line found from the current node at
+     *  PLY, whose tail is copied from _pv[PLY + 1] whenever a new best
+     *  move is found. */
+    private final int[][] _pv = new int[MAX_DEPTH + 2][MAX_DEPTH + 1];
+    /** Lengths of the lines in _pv. */
+    private final int[] _pvLength = new int[MAX_DEPTH + 2];
+    /** Two killer moves (most recent first) for each ply of the current
+     *  iteration: moves that recently caused cutoffs at that ply. */
+    private final int[][] _killers = new int[MAX_DEPTH + 1][2];
+    /** History scores of queen moves, indexed by queenIndex, and of spear
+     *  throws, indexed by spearIndex: the sum of the squared depths of
+     *  the cutoffs they caused during this turn. */
+    private final int[]
+        _queenHistory = new int[Bits.SQUARES * Bits.SQUARES],
+        _spearHistory = new int[Bits.SQUARES * Bits.SQUARES];
+
+    /** Depth of the current iteration. */
+    private int _rootDepth;
+    /** True iff the queens are separated in the position searched. */
+    private boolean _rootSeparated;
+    /** My search number and the number of searches running at once. */
+    private int _variation, _variations;
+    /** Time at which the current search is abandoned, in
+     *  System.nanoTime() units. */
+    private volatile long _hardDeadline;
+    /** Time after which the current search starts no new iterations, in
+     *  System.nanoTime() units. */
+    private volatile long _softDeadline;
+    /** True iff stop() has been called since setup. */
+    private volatile boolean _stopped;
+    /** True iff the current search iteration has been abandoned. */
+    private boolean _aborted;
+    /** Number of nodes visited by the current search. */
+    private long _nodes;
+    /** The packed move found by the last call to findMove with SAVEMOVE
+     *  true. */
+    private int _lastFoundMove;
+    /** The principal variation of the deepest completed iteration. */
+    private volatile int[] _principalVariation = new int[0];
+    /** Results of the deepest completed iteration. */
+    private volatile int _bestMove, _bestValue, _completedDepth;
+}
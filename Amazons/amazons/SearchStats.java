@@ -0,0 +1,229 @@
+package amazons;
+
+import java.util.Arrays;
+
+/** Counts of the work done by a Search: nodes visited, leaves evaluated,
+ *  beta cutoffs (and how many of them the first move tried produced),
+ *  transposition table probes and hits, searches repeated with a wider
+ *  window, and the nodes and time spent on each completed iteration of
+ *  iterative deepening, along with the line of play it expected.  A
+ *  Search keeps its counts in plain fields of a SearchStats that only
+ *  its own thread updates, so counting costs an increment and nothing
+ *  more.  Other threads see copies instead: a Search publishes a new
+ *  one as each iteration completes, and nothing modifies a copy once
+ *  it is published.  An AI sums those of its Searches for anyone who
+ *  asks.
+ *  @author Eileen Wang
+ */
+class SearchStats {
+
+    /** A SearchStats with all counts 0. */
+    SearchStats() {
+    }
+
+    /** A copy of MODEL, which shares nothing that either may change. */
+    SearchStats(SearchStats model) {
+        add(model);
+    }
+
+    /** Set all counts to 0. */
+    void clear() {
+        _nodes = _evaluations = _cutoffs = _firstMoveCutoffs = 0;
+        _probes = _hits = _researches = 0;
+        _completedDepth = 0;
+        _principalVariation = new int[0];
+        Arrays.fill(_iterationNodes, 0);
+        Arrays.fill(_iterationNanos, 0);
+    }
+
+    /** Add the counts in OTHER, describing a search that ran alongside
+     *  mine, to my own.  Iterations at the same depth ran at the same
+     *  time, so their nodes add but their times do not. */
+    void add(SearchStats other) {
+        _nodes += other._nodes;
+        _evaluations += other._evaluations;
+        _cutoffs += other._cutoffs;
+        _firstMoveCutoffs += other._firstMoveCutoffs;
+        _probes += other._probes;
+        _hits += other._hits;
+        _researches += other._researches;
+        if (other._completedDepth > _completedDepth
+            || _principalVariation.length == 0) {
+            _principalVariation = other._principalVariation;
+        }
+        _completedDepth = Math.max(_completedDepth, other._completedDepth);
+        for (int d = 0; d < _iterationNodes.length; d += 1) {
+            _iterationNodes[d] += other._iterationNodes[d];
+            _iterationNanos[d] =
+                Math.max(_iterationNanos[d], other._iterationNanos[d]);
+        }
+    }
+
+    /** Record that the current search has visited NODES nodes in all. */
+    void setNodes(long nodes) {
+        _nodes = nodes;
+    }
+
+    /** Record one static evaluation. */
+    void countEvaluation() {
+        _evaluations += 1;
+    }
+
+    /** Record one transposition table probe, which found an entry iff
+     *  HIT. */
+    void countProbe(boolean hit) {
+        _probes += 1;
+        if (hit) {
+            _hits += 1;
+        }
+    }
+
+    /** Record one beta cutoff, caused by the first move tried iff
+     *  FIRST. */
+    void countCutoff(boolean first) {
+        _cutoffs += 1;
+        if (first) {
+            _firstMoveCutoffs += 1;
+        }
+    }
+
+    /** Record one search repeated with a wider window, after a null
+     *  window or aspiration window search failed. */
+    void countResearch() {
+        _researches += 1;
+    }
+
+    /** Record the completion of the iteration to DEPTH, which visited
+     *  NODES nodes in NANOS nanoseconds and expects the line of play PV
+     *  (packed moves), which I take over. */
+    void endIteration(int depth, long nodes, long nanos, int[] pv) {
+        _iterationNodes[depth] = nodes;
+        _iterationNanos[depth] = nanos;
+        _completedDepth = Math.max(_completedDepth, depth);
+        _principalVariation = pv;
+    }
+
+    /** Return the number of nodes visited. */
+    long nodes() {
+        return _nodes;
+    }
+
+    /** Return the number of positions evaluated statically. */
+    long evaluations() {
+        return _evaluations;
+    }
+
+    /** Return the number of beta cutoffs. */
+    long cutoffs() {
+        return _cutoffs;
+    }
+
+    /** Return the number of beta cutoffs caused by the first move
+     *  tried. */
+    long firstMoveCutoffs() {
+        return _firstMoveCutoffs;
+    }
+
+    /** Return the fraction of beta cutoffs caused by the first move
+     *  tried (a measure of the quality of move ordering), or 0 if there
+     *  were none. */
+    double firstMoveCutoffRate() {
+        return _cutoffs == 0 ? 0 : (double) _firstMoveCutoffs / _cutoffs;
+    }
+
+    /** Return the number of transposition table probes. */
+    long probes() {
+        return _probes;
+    }
+
+    /** Return the number of probes that found an entry. */
+    long hits() {
+        return _hits;
+    }
+
+    /** Return the fraction of probes that found an entry, or 0 if there
+     *  were none. */
+    double hitRate() {
+        return _probes == 0 ? 0 : (double) _hits / _probes;
+    }
+
+    /** Return the number of searches repeated with a wider window. */
+    long researches() {
+        return _researches;
+    }
+
+    /** Return the line of play expected by the deepest completed
+     *  iteration, as packed moves.  The caller must not modify it. */
+    int[] principalVariation() {
+        return _principalVariation;
+    }
+
+    /** Return the depth of the deepest completed iteration, or 0 if none
+     *  completed. */
+    int completedDepth() {
+        return _completedDepth;
+    }
+
+    /** Return the number of nodes visited by the iteration to DEPTH, or
+     *  0 if it did not complete. */
+    long iterationNodes(int depth) {
+        return _iterationNodes[depth];
+    }
+
+    /** Return the time taken by the iteration to DEPTH, in nanoseconds,
+     *  or 0 if it did not complete. */
+    long iterationNanos(int depth) {
+        return _iterationNanos[depth];
+    }
+
+    /** Return the nodes visited per second by the iteration to DEPTH, or
+     *  0 if it did not complete. */
+    long nps(int depth) {
+        return _iterationNodes[depth] * 1_000_000_000L
+            / Math.max(1, _iterationNanos[depth]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format("nodes %d, evaluations %d, cutoffs %d"
+                                 + " (%.1f%% first move),"
+                                 + " hash hits %d/%d (%.1f%%),"
+                                 + " re-searches %d",
+                                 _nodes, _evaluations, _cutoffs,
+                                 100 * firstMoveCutoffRate(), _hits,
+                                 _probes, 100 * hitRate(), _researches));
+        for (int d = 1; d <= _completedDepth; d += 1) {
+            if (_iterationNodes[d] > 0) {
+                out.append(String.format("%n  depth %d: %d nodes, %d ms,"
+                                         + " %d nodes/s",
+                                         d, _iterationNodes[d],
+                                         _iterationNanos[d] / 1_000_000,
+                                         nps(d)));
+            }
+        }
+        if (_principalVariation.length > 0) {
+            out.append(String.format("%n  pv:"));
+            for (int move : _principalVariation) {
+                out.append(' ').append(Move.mv(move));
+            }
+        }
+        return out.toString();
+    }
+
+    /** Counts of nodes, static evaluations, beta cutoffs, cutoffs by the
+     *  first move tried, table probes, probes that hit, and
+     *  re-searches. */
+    private long _nodes, _evaluations, _cutoffs, _firstMoveCutoffs,
+        _probes, _hits, _researches;
+    /** Expected line of play of the deepest completed iteration. */
+    private int[] _principalVariation = new int[0];
+    /** Depth of the deepest completed iteration. */
+    private int _completedDepth;
+    /** Nodes visited and nanoseconds taken by each completed iteration,
+     *  indexed by depth. */
+    private final long[]
+        _iterationNodes = new long[Search.MAX_DEPTH + 1],
+        _iterationNanos = new long[Search.MAX_DEPTH + 1];
+
+}
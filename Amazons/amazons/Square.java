@@ -7,7 +7,8 @@ import java.util.List;
 import static amazons.Utils.*;
 
 /** Represents a position on an Amazons board.  Positions are numbered
- *  from 0 (lower-left corner) to 99 (upper-right corner).  Squares
+ *  from 0 (upper-left corner) to Board.SIZE * Board.SIZE - 1
+ *  (lower-right corner), row by row.  Squares
  *  are immutable and unique: there is precisely one square created for
  *  each distinct position.  Clients create squares using the factory method
  *  sq, not the constructor.  Because there is a unique Square object for each
@@ -23,7 +24,10 @@ final class Square {
      *  group.  This subpattern is intended to be incorporated into
      *  other pattern that contain square designations (such as
      *  patterns for moves). */
-    static final String SQ = "([a-j](?:[1-9]|10))";
+    static final String SQ =
+        String.format("([a-%c](?:%s))", (char) ('a' + Board.SIZE - 1),
+                      Board.SIZE <= 9 ? "[1-" + Board.SIZE + "]"
+                      : "[1-9]|1[0-" + (Board.SIZE - 10) + "]");
 
     /** Return my row position, where 0 is the bottom row. */
     int row() {
@@ -35,8 +39,10 @@ final class Square {
         return _col;
     }
 
-    /** Return my index position (0-99).  0 represents square a1, and 99
-     *  is square j10. */
+    /** Return my index position (0 to Board.SIZE * Board.SIZE - 1).  0
+     *  represents the square in the top row of column a (a10 on the
+     *  standard board), and the last index the square in the bottom row
+     *  of the last column (j1). */
     int index() {
         return _index;
     }
@@ -73,49 +79,25 @@ final class Square {
         if (dir > 7 || dir < 0) {
             throw new IllegalArgumentException("Invalid direction");
         }
-        if (dir == 0) {
-            if (row() == 9) {
-                return null;
-            }
-            return Square.sq(this.col(), this.row() + steps);
-        } else if (dir == 1) {
-            if (row() == 9) {
-                return null;
-            }
-            return Square.sq(this.col() + steps, this.row() + steps);
-        } else if (dir == 2) {
-            if (col() == 9) {
-                return null;
-            }
-            return Square.sq(this.col() + steps, this.row());
-        } else if (dir == 3) {
-            if (col() == 9) {
-                return null;
-            }
-            return Square.sq(this.col() + steps, this.row() - steps);
-        } else if (dir == 4) {
-            if (row() == 0) {
-                return null;
-            }
-            return Square.sq(this.col(), this.row() - steps);
-        } else if (dir == 5) {
-            if (row() == 0) {
-                return null;
-            }
-            return Square.sq(this.col() - steps, this.row() - steps);
-        } else if (dir == 6) {
-            if (col() == 0) {
-                return null;
-            }
-            return Square.sq(this.col() - steps, this.row());
-        } else if (dir == 7) {
-            if (col() == 0) {
-                return null;
-            }
-            return Square.sq(this.col() - steps, this.row() + steps);
-        } else {
+        if (steps == 0) {
+            return this;
+        } else if (steps < 0 || steps > RAY_LENGTH[_index][dir]) {
             return null;
         }
+        return RAYS[_index][dir][steps - 1];
+    }
+
+    /** Return the Squares 1, 2, ... steps away from me in direction DIR
+     *  (as for queenMove), in order, up to the edge of the board.  The
+     *  result is shared and must not be modified. */
+    Square[] ray(int dir) {
+        return RAYS[_index][dir];
+    }
+
+    /** Return the number of squares between me and the edge of the board
+     *  in direction DIR (as for queenMove). */
+    int rayLength(int dir) {
+        return RAY_LENGTH[_index][dir];
     }
 
     /** Return the direction (an int as defined in the documentation
@@ -166,7 +148,7 @@ final class Square {
         if (!exists(row, col)) {
             return null;
         }
-        return sq(((9 - row) * 10) + col);
+        return sq((Board.SIZE - 1 - row) * Board.SIZE + col);
     }
 
     /** Return the (unique) Square denoting the position with index INDEX. */
@@ -198,12 +180,16 @@ final class Square {
     /** Return the Square with index INDEX. */
     private Square(int index) {
         _index = index;
-        _row = (VALUE - index) / 10;
-        _col = index % 10;
+        _row = (VALUE - index) / Board.SIZE;
+        _col = index % Board.SIZE;
         _str = String.format("%s" + "%d",
                 (char) (_col + A_VALUE), _row + 1);
     }
 
+    /**Value used to fix flipped board: the largest index.  (Declared
+     * before the tables, which are computed from it.)*/
+    public static final int VALUE = Board.SIZE * Board.SIZE - 1;
+
     /** The cache of all created squares, by index. */
     private static final Square[] SQUARES =
         new Square[Board.SIZE * Board.SIZE];
@@ -211,10 +197,35 @@ final class Square {
     /** SQUARES viewed as a List. */
     private static final List<Square> SQUARE_LIST = Arrays.asList(SQUARES);
 
+    /** RAYS[i][d] is the value of sq(i).ray(d). */
+    private static final Square[][][] RAYS =
+        new Square[Board.SIZE * Board.SIZE][8][];
+
+    /** RAY_LENGTH[i][d] is the length of RAYS[i][d]. */
+    private static final int[][] RAY_LENGTH =
+        new int[Board.SIZE * Board.SIZE][8];
+
     static {
         for (int i = Board.SIZE * Board.SIZE - 1; i >= 0; i -= 1) {
             SQUARES[i] = new Square(i);
         }
+        for (Square from : SQUARES) {
+            for (int dir = 0; dir < 8; dir += 1) {
+                int n;
+                n = 0;
+                while (exists(from.col() + (n + 1) * DIR[dir][0],
+                              from.row() + (n + 1) * DIR[dir][1])) {
+                    n += 1;
+                }
+                Square[] ray = new Square[n];
+                for (int k = 0; k < n; k += 1) {
+                    ray[k] = sq(from.col() + (k + 1) * DIR[dir][0],
+                                from.row() + (k + 1) * DIR[dir][1]);
+                }
+                RAYS[from.index()][dir] = ray;
+                RAY_LENGTH[from.index()][dir] = n;
+            }
+        }
     }
 
     /** My index position. */
@@ -229,7 +240,4 @@ final class Square {
     /**Char value for a.*/
     public static final int A_VALUE = 97;
 
-    /**Value used to fix flipped board.*/
-    public static final int VALUE = 99;
-
 }
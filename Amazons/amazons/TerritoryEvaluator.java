@@ -0,0 +1,102 @@
+package amazons;
+
+import static amazons.Piece.*;
+
+/** An Evaluator that estimates the territory each side controls.  For
+ *  every empty square it finds how many queen moves, and how many king
+ *  moves (single steps), each side needs to reach it, and credits the
+ *  square to the side that gets there first (a square both reach equally
+ *  soon counts a little for the side to move).  The queen-move count
+ *  dominates early in the game, while the king-move count, which better
+ *  describes how sealed-off regions are filled, takes over as the board
+ *  fills.  Distances are computed for all squares at once by flood fills
+ *  over the board's 128-bit occupancy masks (see Bits).
+ *  @author Eileen Wang
+ */
+class TerritoryEvaluator implements Evaluator {
+
+    @Override
+    public int score(Board board) {
+        long emptyLo = board.squaresLo(EMPTY), emptyHi = board.squaresHi(EMPTY);
+        int queen = territory(board, emptyLo, emptyHi, true);
+        int king = territory(board, emptyLo, emptyHi, false);
+        int span = Bits.SQUARES - 8;
+        int filled = Math.min(span, board.numMoves());
+        return (queen * (span - filled) + king * filled) / span;
+    }
+
+    @Override
+    public Evaluator create() {
+        return new TerritoryEvaluator();
+    }
+
+    /** Return White's territory less Black's on BOARD, measured in queen
+     *  moves if QUEEN, and otherwise in king moves, where EMPTYLO and
+     *  EMPTYHI are the empty squares.  Each square a side reaches first
+     *  is worth SQUARE_VALUE and each tied square TIE_VALUE to the side
+     *  to move. */
+    private int territory(Board board, long emptyLo, long emptyHi,
+                          boolean queen) {
+        long wLo = board.squaresLo(WHITE), wHi = board.squaresHi(WHITE);
+        long bLo = board.squaresLo(BLACK), bHi = board.squaresHi(BLACK);
+        long wReachLo, wReachHi, bReachLo, bReachHi;
+        wReachLo = wReachHi = bReachLo = bReachHi = 0;
+        long whiteLo, whiteHi, blackLo, blackHi, tieLo, tieHi;
+        whiteLo = whiteHi = blackLo = blackHi = tieLo = tieHi = 0;
+        while ((wLo | wHi | bLo | bHi) != 0) {
+            expand(wLo, wHi, emptyLo, emptyHi, queen);
+            wLo = _lo & ~wReachLo;
+            wHi = _hi & ~wReachHi;
+            expand(bLo, bHi, emptyLo, emptyHi, queen);
+            bLo = _lo & ~bReachLo;
+            bHi = _hi & ~bReachHi;
+            wReachLo |= wLo;
+            wReachHi |= wHi;
+            bReachLo |= bLo;
+            bReachHi |= bHi;
+            long claimedLo = whiteLo | blackLo | tieLo,
+                claimedHi = whiteHi | blackHi | tieHi;
+            tieLo |= wLo & bLo & ~claimedLo;
+            tieHi |= wHi & bHi & ~claimedHi;
+            whiteLo |= wLo & ~bReachLo & ~claimedLo;
+            whiteHi |= wHi & ~bReachHi & ~claimedHi;
+            blackLo |= bLo & ~wReachLo & ~claimedLo;
+            blackHi |= bHi & ~wReachHi & ~claimedHi;
+        }
+        int ties = TIE_VALUE * Bits.count(tieLo, tieHi);
+        return SQUARE_VALUE * (Bits.count(whiteLo, whiteHi)
+                               - Bits.count(blackLo, blackHi))
+            + (board.turn() == WHITE ? ties : -ties);
+    }
+
+    /** Set _lo and _hi to the set of squares in EMPTYLO, EMPTYHI reachable
+     *  in one queen move (if QUEEN) or one king move (otherwise) from the
+     *  squares in FROMLO, FROMHI, where only squares in EMPTYLO, EMPTYHI
+     *  may be passed through. */
+    private void expand(long fromLo, long fromHi, long emptyLo, long emptyHi,
+                        boolean queen) {
+        long rLo, rHi;
+        rLo = rHi = 0;
+        for (int dir = 0; dir < 8; dir += 1) {
+            long sLo = fromLo, sHi = fromHi;
+            do {
+                long nLo = Bits.shiftLo(sLo, sHi, dir) & emptyLo;
+                sHi = Bits.shiftHi(sLo, sHi, dir) & emptyHi;
+                sLo = nLo;
+                rLo |= sLo;
+                rHi |= sHi;
+            } while (queen && (sLo | sHi) != 0);
+        }
+        _lo = rLo;
+        _hi = rHi;
+    }
+
+    /** Value of a square reached first by one side. */
+    private static final int SQUARE_VALUE = 8;
+    /** Value to the side to move of a square both sides reach equally
+     *  soon. */
+    private static final int TIE_VALUE = 1;
+
+    /** Result of expand. */
+    private long _lo, _hi;
+}
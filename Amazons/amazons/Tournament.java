@@ -0,0 +1,357 @@
+package amazons;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static amazons.Piece.*;
+
+import ucb.util.CommandArgs;
+
+/** A match between two engine configurations, played headlessly in this
+ *  process with several games running at once.  Every game has its own
+ *  Controller, Board, players, and random seed, so games share nothing
+ *  but the tally.  Games are played in pairs from the same randomly
+ *  chosen opening, each configuration taking White in one game of the
+ *  pair, which cancels most of the bias of both the opening and the
+ *  first move.
+ *
+ *  After each game, the match applies a sequential probability ratio
+ *  test (SPRT) of the hypothesis that the first configuration is ELO0
+ *  Elo points stronger than the second against the hypothesis that it
+ *  is ELO1 points stronger, and stops as soon as either is accepted
+ *  with error rates of SPRT_ALPHA and SPRT_BETA.  Amazons has no draws,
+ *  so each game is a Bernoulli trial and the log-likelihood ratio is a
+ *  simple sum.
+ *  @author Eileen Wang
+ */
+public class Tournament {
+
+    /** Default number of games. */
+    static final int DEFAULT_GAMES = 200;
+    /** Default milliseconds per side per game. */
+    static final long DEFAULT_MILLIS = 10000;
+    /** Default number of random moves opening each pair of games. */
+    static final int DEFAULT_RANDOM_PLIES = 4;
+    /** Default transposition table or tree size per player, in
+     *  megabytes. */
+    static final int DEFAULT_MEGABYTES = 16;
+    /** Probability of accepting ELO1 when ELO0 holds. */
+    static final double SPRT_ALPHA = 0.05;
+    /** Probability of accepting ELO0 when ELO1 holds. */
+    static final double SPRT_BETA = 0.05;
+
+    /** A match of at most GAMES games between players created from
+     *  FIRST and SECOND, running CONCURRENCY games at a time and giving
+     *  each side MILLIS milliseconds per game.  Each pair of games opens
+     *  with RANDOMPLIES random moves chosen with a generator derived from
+     *  SEED.  The SPRT tests ELO0 against ELO1. */
+    Tournament(Player first, Player second, int games, int concurrency,
+               long millis, int randomPlies, long seed,
+               double elo0, double elo1) {
+        _first = first;
+        _second = second;
+        _games = games;
+        _concurrency = concurrency;
+        _millis = millis;
+        _randomPlies = randomPlies;
+        _seed = seed;
+        _elo0 = elo0;
+        _elo1 = elo1;
+    }
+
+    /** Play the match, printing progress to System.out, and return once
+     *  the SPRT has reached a verdict or all games are done. */
+    void run() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(_concurrency);
+        for (int game = 0; game < _games; game += 1) {
+            int g = game;
+            pool.execute(() -> playGame(g));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        System.out.println(summary());
+        System.out.println(verdict());
+    }
+
+    /** Play game number GAME of the match, unless the match is already
+     *  decided, and record its result. */
+    private void playGame(int game) {
+        if (decided()) {
+            return;
+        }
+        Random random = new Random(_seed + (game / 2) * SEED_STRIDE);
+        List<Move> opening = randomOpening(random, _randomPlies);
+        boolean firstIsWhite = game % 2 == 0;
+        Controller controller =
+            new Controller(new NullView(), null, new SilentReporter(),
+                           _first, _second);
+        controller.setSeed(random.nextLong() + game);
+        try {
+            Piece winner =
+                firstIsWhite
+                ? controller.playGame(_first, _second, opening, _millis)
+                : controller.playGame(_second, _first, opening, _millis);
+            record((winner == WHITE) == firstIsWhite);
+        } catch (RuntimeException excp) {
+            System.err.printf("game %d abandoned: %s%n", game + 1,
+                              excp.getMessage());
+        }
+    }
+
+    /** Return a list of N random moves from the initial position, chosen
+     *  with RANDOM, stopping early if the game ends. */
+    static List<Move> randomOpening(Random random, int n) {
+        Board board = new Board();
+        int[] moves = new int[Board.MAX_MOVES];
+        List<Move> result = new ArrayList<>();
+        for (int i = 0; i < n && board.winner() == null; i += 1) {
+            int count = board.generateMoves(board.turn(), moves);
+            int move = moves[random.nextInt(count)];
+            result.add(Move.mv(move));
+            board.makeMove(move);
+        }
+        return result;
+    }
+
+    /** Record a game won by the first configuration iff FIRSTWON, and
+     *  report the standing. */
+    private synchronized void record(boolean firstWon) {
+        if (firstWon) {
+            _wins += 1;
+        } else {
+            _losses += 1;
+        }
+        double llr = llr(_wins, _losses, _elo0, _elo1);
+        if (llr >= upperBound()) {
+            _verdict = 1;
+        } else if (llr <= lowerBound()) {
+            _verdict = -1;
+        }
+        System.out.printf("%s  LLR %.2f [%.2f, %.2f]%n", summary(), llr,
+                          lowerBound(), upperBound());
+    }
+
+    /** Return true iff the SPRT has reached a verdict. */
+    private synchronized boolean decided() {
+        return _verdict != 0;
+    }
+
+    /** Return a description of the score so far. */
+    private synchronized String summary() {
+        int n = _wins + _losses;
+        if (n == 0) {
+            return "no games completed";
+        }
+        double[] interval = eloInterval(_wins, _losses);
+        return String.format("games %d: +%d -%d  Elo %.1f (%.1f, %.1f)",
+                             n, _wins, _losses, elo(_wins, _losses),
+                             interval[0], interval[1]);
+    }
+
+    /** Return a description of the outcome of the SPRT. */
+    private synchronized String verdict() {
+        switch (_verdict) {
+        case 1:
+            return String.format("SPRT: H1 (Elo >= %.1f) accepted", _elo1);
+        case -1:
+            return String.format("SPRT: H0 (Elo <= %.1f) accepted", _elo0);
+        default:
+            return "SPRT: inconclusive";
+        }
+    }
+
+    /** Return the expected score of a player ELO points stronger than
+     *  its opponent. */
+    static double expectedScore(double elo) {
+        return 1.0 / (1.0 + Math.pow(10.0, -elo / 400.0));
+    }
+
+    /** Return the Elo difference corresponding to an expected score of
+     *  SCORE, which must lie strictly between 0 and 1. */
+    static double eloOf(double score) {
+        return -400.0 * Math.log10(1.0 / score - 1.0);
+    }
+
+    /** Return the log-likelihood ratio of WINS wins and LOSSES losses
+     *  under the hypothesis that the Elo difference is ELO1 rather than
+     *  ELO0. */
+    static double llr(int wins, int losses, double elo0, double elo1) {
+        double p0 = expectedScore(elo0), p1 = expectedScore(elo1);
+        return wins * Math.log(p1 / p0)
+            + losses * Math.log((1.0 - p1) / (1.0 - p0));
+    }
+
+    /** Return the LLR at or above which the SPRT accepts ELO1. */
+    static double upperBound() {
+        return Math.log((1.0 - SPRT_BETA) / SPRT_ALPHA);
+    }
+
+    /** Return the LLR at or below which the SPRT accepts ELO0. */
+    static double lowerBound() {
+        return Math.log(SPRT_BETA / (1.0 - SPRT_ALPHA));
+    }
+
+    /** Return the estimated Elo difference given WINS wins and LOSSES
+     *  losses.  Half a game is added to each count so that a clean sweep
+     *  gives a finite estimate. */
+    static double elo(int wins, int losses) {
+        return eloOf((wins + 0.5) / (wins + losses + 1.0));
+    }
+
+    /** Return the bounds of an approximate 95% confidence interval for
+     *  the Elo difference given WINS wins and LOSSES losses. */
+    static double[] eloInterval(int wins, int losses) {
+        double n = wins + losses + 1.0;
+        double score = (wins + 0.5) / n;
+        double margin = Z_95 * Math.sqrt(score * (1.0 - score) / n);
+        double lo = Math.max(score - margin, MIN_SCORE);
+        double hi = Math.min(score + margin, 1.0 - MIN_SCORE);
+        return new double[] { eloOf(lo), eloOf(hi) };
+    }
+
+    /** Return a player template described by SPEC, which has the form
+     *  ENGINE[:EVAL], where ENGINE is pvs, alphabeta (the same search
+     *  without PVS or aspiration windows), or mcts, and EVAL is
+     *  territory (the default) or mobility.  Automated players get
+     *  MEGABYTES megabytes and run single-threaded, so that concurrent
+     *  games do not compete for processors. */
+    static Player player(String spec, int megabytes) {
+        String[] parts = spec.split(":");
+        Evaluator evaluator;
+        if (parts.length < 2 || parts[1].equals("territory")) {
+            evaluator = new TerritoryEvaluator();
+        } else if (parts[1].equals("mobility")) {
+            evaluator = new MobilityEvaluator();
+        } else {
+            throw Utils.error("unknown evaluator: %s", parts[1]);
+        }
+        switch (parts[0]) {
+        case "pvs":
+            return new AI(megabytes, 1, evaluator, null, false, true);
+        case "alphabeta":
+            return new AI(megabytes, 1, evaluator, null, false, false);
+        case "mcts":
+            return new MCTSPlayer(megabytes, 1, evaluator);
+        default:
+            throw Utils.error("unknown engine: %s", parts[0]);
+        }
+    }
+
+    /** Play a match.  ARGS are options (see the usage message) followed
+     *  by two player specifications (see player). */
+    public static void main(String... args) throws InterruptedException {
+        CommandArgs options =
+            new CommandArgs("--games=(\\d+){0,1} --concurrency=(\\d+){0,1}"
+                            + " --time=(\\d+){0,1}"
+                            + " --random-plies=(\\d+){0,1}"
+                            + " --seed=(\\d+){0,1} --hash=(\\d+){0,1}"
+                            + " --size=(\\d+){0,1}"
+                            + " --elo0=(-?\\d+(\\.\\d*)?){0,1}"
+                            + " --elo1=(-?\\d+(\\.\\d*)?){0,1}"
+                            + " --={2}", args);
+        if (!options.ok() || options.get("--").size() != 2
+            || !Main.selectBoardSize(options)) {
+            System.err.println("Usage: java amazons.Tournament [--games=N]"
+                               + " [--concurrency=N] [--time=MILLIS]"
+                               + " [--random-plies=N] [--seed=N]"
+                               + " [--hash=MB] [--size=N]"
+                               + " [--elo0=ELO] [--elo1=ELO]"
+                               + " ENGINE[:EVAL] ENGINE[:EVAL]");
+            System.err.printf("  where %d <= N <= %d for --size=N%n",
+                              Board.MIN_SIZE, Board.MAX_SIZE);
+            System.exit(1);
+        }
+        int megabytes = intOption(options, "--hash", DEFAULT_MEGABYTES);
+        List<String> specs = options.get("--");
+        Tournament match =
+            new Tournament(player(specs.get(0), megabytes),
+                           player(specs.get(1), megabytes),
+                           intOption(options, "--games", DEFAULT_GAMES),
+                           intOption(options, "--concurrency",
+                                     Runtime.getRuntime()
+                                     .availableProcessors()),
+                           longOption(options, "--time", DEFAULT_MILLIS),
+                           intOption(options, "--random-plies",
+                                     DEFAULT_RANDOM_PLIES),
+                           longOption(options, "--seed", 0),
+                           doubleOption(options, "--elo0", 0),
+                           doubleOption(options, "--elo1", DEFAULT_ELO1));
+        System.out.printf("%s vs. %s%n", specs.get(0), specs.get(1));
+        match.run();
+        System.exit(0);
+    }
+
+    /** Return the value of option NAME in OPTIONS as an int, or DFLT if
+     *  it is absent. */
+    private static int intOption(CommandArgs options, String name,
+                                 int dflt) {
+        return (int) longOption(options, name, dflt);
+    }
+
+    /** Return the value of option NAME in OPTIONS as a long, or DFLT if
+     *  it is absent. */
+    private static long longOption(CommandArgs options, String name,
+                                   long dflt) {
+        return options.contains(name)
+            ? Long.parseLong(options.getFirst(name)) : dflt;
+    }
+
+    /** Return the value of option NAME in OPTIONS as a double, or DFLT
+     *  if it is absent. */
+    private static double doubleOption(CommandArgs options, String name,
+                                       double dflt) {
+        return options.contains(name)
+            ? Double.parseDouble(options.getFirst(name)) : dflt;
+    }
+
+    /** A Reporter that discards everything, for games no one watches. */
+    static class SilentReporter implements Reporter {
+        @Override
+        public void reportError(String format, Object... args) {
+        }
+
+        @Override
+        public void reportNote(String format, Object... args) {
+        }
+
+        @Override
+        public void reportMove(Move move) {
+        }
+    }
+
+    /** Default Elo difference of the SPRT's alternative hypothesis. */
+    private static final double DEFAULT_ELO1 = 10;
+    /** Multiplier of the standard error giving a 95% confidence
+     *  interval. */
+    private static final double Z_95 = 1.96;
+    /** Least score used in a confidence interval, keeping its bounds
+     *  finite. */
+    private static final double MIN_SCORE = 1e-3;
+    /** Spacing of the seeds of successive pairs of games. */
+    private static final long SEED_STRIDE = 0x9e3779b97f4a7c15L;
+
+    /** Templates of the two configurations. */
+    private final Player _first, _second;
+    /** Maximum number of games. */
+    private final int _games;
+    /** Number of games played at once. */
+    private final int _concurrency;
+    /** Milliseconds per side per game. */
+    private final long _millis;
+    /** Number of random moves opening each pair of games. */
+    private final int _randomPlies;
+    /** Seed from which each game's generators are derived. */
+    private final long _seed;
+    /** Elo differences of the SPRT's null and alternative hypotheses. */
+    private final double _elo0, _elo1;
+    /** Games won and lost by the first configuration. */
+    private int _wins, _losses;
+    /** 1 if the SPRT accepted ELO1, -1 if it accepted ELO0, and 0 if it
+     *  has not decided. */
+    private int _verdict;
+
+}
@@ -0,0 +1,125 @@
+package amazons;
+
+import java.util.Arrays;
+
+/** A fixed-size table of search results keyed by Board.hash(), which may
+ *  be shared by several search threads without locking.  Each entry
+ *  occupies two longs: a data word packing the score, best move, depth,
+ *  bound type, and search generation, and a check word holding the
+ *  exclusive or of the key and the data word.  A reader accepts an entry
+ *  only if the two words together reproduce its key, so an entry torn
+ *  by a racing writer is simply treated as a miss.
+ *  @author Eileen Wang
+ */
+class TranspositionTable {
+
+    /** Bound types.  EXACT: the stored score is the value of the position.
+     *  LOWER: the value is at least the stored score.  UPPER: the value is
+     *  at most the stored score. */
+    static final int EXACT = 1, LOWER = 2, UPPER = 3;
+
+    /** A table occupying about MEGABYTES megabytes (at least one
+     *  entry). */
+    TranspositionTable(int megabytes) {
+        long entries = Math.max(1, (long) megabytes * (1 << 20) / 16);
+        int size = Integer.highestOneBit((int) Math.min(entries, 1 << 26));
+        _table = new long[2 * size];
+        _mask = size - 1;
+    }
+
+    /** Return the data word stored for the position whose hash is KEY, or
+     *  0 if there is none. */
+    long probe(long key) {
+        int k = 2 * (int) (key & _mask);
+        long data = _table[k + 1];
+        if ((_table[k] ^ data) != key || data == 0) {
+            return 0;
+        }
+        return data;
+    }
+
+    /** Record that the position with hash KEY, searched to DEPTH, has a
+     *  score of SCORE (interpreted according to BOUND) and best packed
+     *  move MOVE (0 if none).  The entry replaces an existing one only if
+     *  that is left over from an earlier search (see newSearch) or was
+     *  searched no more deeply. */
+    void store(long key, int depth, int bound, int score, int move) {
+        int k = 2 * (int) (key & _mask);
+        long old = _table[k + 1];
+        if (old != 0 && generation(old) == _generation
+            && depth(old) > depth) {
+            return;
+        }
+        if (move == 0 && (_table[k] ^ old) == key) {
+            move = move(old);
+        }
+        long data = (score & 0xffffffffL)
+            | ((long) move << MOVE_SHIFT)
+            | ((long) Math.min(depth, MAX_DEPTH) << DEPTH_SHIFT)
+            | ((long) bound << BOUND_SHIFT)
+            | ((long) _generation << GENERATION_SHIFT);
+        _table[k] = key ^ data;
+        _table[k + 1] = data;
+    }
+
+    /** Start a new search, making all existing entries candidates for
+     *  replacement. */
+    void newSearch() {
+        _generation = (_generation + 1) & ((1 << GENERATION_BITS) - 1);
+    }
+
+    /** Remove all entries. */
+    void clear() {
+        Arrays.fill(_table, 0);
+    }
+
+    /** Return the score in data word DATA. */
+    static int score(long data) {
+        return (int) data;
+    }
+
+    /** Return the packed move in data word DATA, or 0 if none. */
+    static int move(long data) {
+        return (int) (data >>> MOVE_SHIFT) & ((1 << MOVE_BITS) - 1);
+    }
+
+    /** Return the search depth in data word DATA. */
+    static int depth(long data) {
+        return (int) (data >>> DEPTH_SHIFT) & MAX_DEPTH;
+    }
+
+    /** Return the bound type (EXACT, LOWER, or UPPER) in data word DATA. */
+    static int bound(long data) {
+        return (int) (data >>> BOUND_SHIFT) & 3;
+    }
+
+    /** Return the search generation in data word DATA. */
+    private static int generation(long data) {
+        return (int) (data >>> GENERATION_SHIFT);
+    }
+
+    /** Field widths in a data word. */
+    private static final int
+        MOVE_BITS = 3 * Move.PACKED_BITS,
+        DEPTH_BITS = 6,
+        GENERATION_BITS = 3;
+
+    /** The largest depth that may be stored. */
+    static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+
+    /** Field positions in a data word.  The score occupies the low 32
+     *  bits. */
+    private static final int
+        MOVE_SHIFT = 32,
+        DEPTH_SHIFT = MOVE_SHIFT + MOVE_BITS,
+        BOUND_SHIFT = DEPTH_SHIFT + DEPTH_BITS,
+        GENERATION_SHIFT = BOUND_SHIFT + 2;
+
+    /** Check and data words of each entry, interleaved. */
+    private final long[] _table;
+    /** Mask selecting an entry number from a key. */
+    private final int _mask;
+    /** Current search generation. */
+    private volatile int _generation;
+
+}
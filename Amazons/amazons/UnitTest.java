@@ -1,5 +1,16 @@
 package amazons;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 import static org.junit.Assert.*;
 import ucb.junit.textui;
@@ -140,6 +151,58 @@ public class UnitTest {
 
     }
 
+    /** Tests that precomputed rays agree with queenMove and stop at the
+     *  edges of the board. */
+    @Test
+    public void testRays() {
+        assertEquals(9, Square.sq(0, 0).rayLength(0));
+        assertEquals(0, Square.sq(0, 0).rayLength(4));
+        assertEquals(2, Square.sq(7, 3).rayLength(1));
+        assertNull(Square.sq(9, 9).queenMove(1, 1));
+        assertNull(Square.sq(3, 3).queenMove(4, 4));
+        for (int i = 0; i < Board.SIZE * Board.SIZE; i += 1) {
+            Square from = Square.sq(i);
+            for (int dir = 0; dir < 8; dir += 1) {
+                Square[] ray = from.ray(dir);
+                for (int k = 0; k < ray.length; k += 1) {
+                    assertEquals(dir, from.direction(ray[k]));
+                    assertEquals(ray[k], from.queenMove(dir, k + 1));
+                }
+            }
+        }
+    }
+
+    /** Tests that Moves are unique, even when created from several
+     *  threads at once, and that only queen-move triples are interned. */
+    @Test
+    public void testMoveInterning() throws InterruptedException {
+        Square a1 = Square.sq("a1"), a5 = Square.sq("a5"),
+            e5 = Square.sq("e5"), b3 = Square.sq("b3");
+        assertNull(Move.mv(a1, b3, a5));
+        assertNull(Move.mv(a1, a5, b3));
+        assertEquals("a1-a5(e5)", Move.mv(a1, a5, e5).toString());
+        assertSame(Move.mv("a1-a5(e5)"), Move.mv(a1, a5, e5));
+        final Move[][] seen = new Move[4][Board.SIZE * Board.SIZE];
+        Thread[] threads = new Thread[seen.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            final int k = t;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < seen[k].length; i += 1) {
+                    seen[k][i] = Move.mv(Square.sq(i), e5, a5);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < seen[0].length; i += 1) {
+            for (int t = 1; t < seen.length; t += 1) {
+                assertSame(seen[0][i], seen[t][i]);
+            }
+        }
+    }
+
     @Test
     public void testSquares() {
         Square sq1 = Square.sq(0, 3);
@@ -161,6 +224,573 @@ public class UnitTest {
         assertTrue(b.isUnblockedMove(sq1, sq2, sq2));
     }
 
+    /** Tests that the Zobrist hash depends only on the position and
+     *  side to move, and survives makeMove, undo, and copying. */
+    @Test
+    public void testHash() {
+        Board b1 = new Board(), b2 = new Board();
+        long initial = b1.hash();
+        assertEquals(initial, b2.hash());
+        b1.makeMove(Move.mv("d1-d2(d3)"));
+        assertNotEquals(initial, b1.hash());
+        b1.makeMove(Move.mv("d10-d9(d8)"));
+        b1.makeMove(Move.mv("g1-g2(g3)"));
+        b2.makeMove(Move.mv("g1-g2(g3)"));
+        b2.makeMove(Move.mv("d10-d9(d8)"));
+        b2.makeMove(Move.mv("d1-d2(d3)"));
+        assertEquals(b1.toString(), b2.toString());
+        assertEquals(b1.hash(), b2.hash());
+        assertEquals(b1.hash(), new Board(b1).hash());
+        b1.undo();
+        b1.undo();
+        assertNotEquals(b1.hash(), b2.hash());
+        b1.undo();
+        assertEquals(initial, b1.hash());
+        b2.put(EMPTY, Square.sq("d3"));
+        b2.put(SPEAR, Square.sq("d3"));
+        assertEquals(new Board(b2).hash(), b2.hash());
+    }
+
+    /** Tests selecting squares from a set by rank. */
+    @Test
+    public void testNth() {
+        long lo = Bits.lo(3) | Bits.lo(63), hi = Bits.hi(64) | Bits.hi(99);
+        assertEquals(3, Bits.nth(lo, hi, 0));
+        assertEquals(63, Bits.nth(lo, hi, 1));
+        assertEquals(64, Bits.nth(lo, hi, 2));
+        assertEquals(99, Bits.nth(lo, hi, 3));
+    }
+
+    /** Tests writing an opening book and looking up its entries. */
+    @Test
+    public void testOpeningBook() throws IOException {
+        Path file = Files.createTempFile("amazons", ".book");
+        try {
+            Board b = new Board();
+            int first = Move.mv("d1-d5(d1)").packed();
+            long[] keys = { 42, b.hash(), -7 };
+            int[] moves = { 1, first, 2 };
+            int[] depths = { 3, 5, 4 };
+            OpeningBook.write(file, keys, moves, depths, 3);
+            OpeningBook book = new OpeningBook(file);
+            assertEquals(3, book.size());
+            assertEquals(first, book.lookup(b.hash()));
+            assertEquals(5, book.depth(b.hash()));
+            assertEquals(2, book.lookup(-7));
+            assertEquals(0, book.lookup(43));
+            assertEquals(Move.mv("d1-d5(d1)"), book.lookup(b));
+            b.makeMove(Move.mv("d1-d5(d1)"));
+            assertNull(book.lookup(b));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /** Tests the endgame solver against exhaustive search on random
+     *  positions in which each side has one queen in a small sealed-off
+     *  area. */
+    @Test
+    public void testEndgameSolver() {
+        Random random = new Random(11);
+        EndgameSolver solver = new EndgameSolver();
+        for (int trial = 0; trial < 40; trial += 1) {
+            Board b = spearsOnly();
+            b.put(WHITE, Square.sq(random.nextInt(4), random.nextInt(3)));
+            carve(b, random, 0, 0, 4, 3, 7);
+            b.put(BLACK, Square.sq(6 + random.nextInt(4),
+                                   6 + random.nextInt(3)));
+            carve(b, random, 6, 6, 4, 3, 7);
+            assertTrue(solver.separated(b));
+            solver.analyze(b, 1 << 20);
+            for (Piece side : new Piece[] { WHITE, BLACK }) {
+                assertEquals(solver.low(side), solver.high(side));
+            }
+            boolean wins = sideToMoveWins(b);
+            assertEquals(wins ? WHITE : BLACK, solver.winner(WHITE));
+            if (wins) {
+                b.makeMove(solver.bestMove(b, 1 << 20));
+                assertFalse(sideToMoveWins(b));
+            }
+        }
+        Board b = new Board();
+        assertFalse(solver.separated(b));
+    }
+
+    /** Tests that the checked forms of makeMove reject illegal moves,
+     *  and that undo restores a position made with a spear thrown back
+     *  to where the queen started. */
+    @Test
+    public void testMakeUndo() {
+        Board b = new Board();
+        String initial = b.toString();
+        long hash = b.hash();
+        try {
+            b.makeMove(Move.mv("d1-d5(d1)"));
+            b.makeMove(Move.mv("d10-d1(d2)"));
+            fail("illegal move accepted");
+        } catch (IllegalArgumentException excp) {
+            assertEquals(1, b.numMoves());
+        }
+        assertEquals(BLACK, b.turn());
+        assertEquals(SPEAR, b.get(Square.sq("d1")));
+        b.undo();
+        assertEquals(initial, b.toString());
+        assertEquals(hash, b.hash());
+        assertEquals(WHITE, b.turn());
+    }
+
+    /** Tests that snapshot and restore recreate a position with its
+     *  history, and that copies do not share histories. */
+    @Test
+    public void testSnapshot() {
+        Board b = new Board();
+        b.makeMove(Move.mv("d1-d5(d1)"));
+        b.makeMove(Move.mv("d10-d6(d10)"));
+        b.makeMove(Move.mv("g1-g5(g1)"));
+        long[] snapshot = b.snapshot();
+        Board r = new Board();
+        r.restore(snapshot);
+        assertEquals(b.toString(), r.toString());
+        assertEquals(b.hash(), r.hash());
+        assertEquals(BLACK, r.turn());
+        assertEquals(3, r.numMoves());
+        Board c = new Board(r);
+        r.undo();
+        r.undo();
+        r.undo();
+        assertEquals(new Board().toString(), r.toString());
+        assertEquals(new Board().hash(), r.hash());
+        assertEquals(b.toString(), c.toString());
+        c.undo();
+        assertEquals(3, b.numMoves());
+        r.restore(snapshot);
+        assertEquals(b.hash(), r.hash());
+    }
+
+    /** Tests storing, probing, and depth-preferred replacement in the
+     *  transposition table. */
+    @Test
+    public void testTranspositionTable() {
+        TranspositionTable table = new TranspositionTable(1);
+        long key = new Board().hash();
+        int move = Move.mv("d1-d2(d3)").packed();
+        assertEquals(0, table.probe(key));
+        table.store(key, 3, TranspositionTable.LOWER, -42, move);
+        long entry = table.probe(key);
+        assertEquals(-42, TranspositionTable.score(entry));
+        assertEquals(3, TranspositionTable.depth(entry));
+        assertEquals(TranspositionTable.LOWER, TranspositionTable.bound(entry));
+        assertEquals(move, TranspositionTable.move(entry));
+        assertEquals(0, table.probe(key ^ 1));
+        table.store(key, 2, TranspositionTable.EXACT, 7, 0);
+        assertEquals(3, TranspositionTable.depth(table.probe(key)));
+        table.newSearch();
+        table.store(key, 2, TranspositionTable.EXACT, 7, 0);
+        entry = table.probe(key);
+        assertEquals(7, TranspositionTable.score(entry));
+        assertEquals(move, TranspositionTable.move(entry));
+        table.clear();
+        assertEquals(0, table.probe(key));
+    }
+
+    /** Tests the share of its clock a player budgets for a move, and the
+     *  deadlines an AI sets from that budget, including when little time
+     *  is left. */
+    @Test
+    public void testMoveBudget() {
+        assertEquals(Player.DEFAULT_MOVE_MILLIS, Player.moveBudget(-1, 0));
+        assertEquals(92_000 / 23, Player.moveBudget(92_000, 0));
+        assertEquals(8_000 / Player.MIN_MOVES_TO_GO,
+                     Player.moveBudget(8_000, 80));
+        assertEquals(1, Player.moveBudget(40, 0));
+        assertEquals(0, Player.moveBudget(0, 50));
+        assertEquals(500_000_000L, AI.softLimit(1_000));
+        assertEquals(2_000_000_000L, AI.hardLimit(1_000, -1));
+        assertEquals(2_000_000_000L, AI.hardLimit(1_000, 100_000));
+        assertEquals(500_000_000L, AI.hardLimit(1_000, 2_000));
+        assertEquals(0, AI.hardLimit(1, 0));
+        for (long left : new long[] { 0, 3, 40, 1_000, 60_000 }) {
+            for (int moves = 0; moves < 92; moves += 13) {
+                long budget = Player.moveBudget(left, moves);
+                assertTrue(AI.softLimit(budget) <= AI.hardLimit(budget, left));
+                assertTrue(AI.hardLimit(budget, left) <= left * 250_000);
+            }
+        }
+    }
+
+    /** Tests that an AI searching on several threads at once returns a
+     *  legal move from the initial position, and wins at once when it
+     *  can trap the last enemy queen. */
+    @Test
+    public void testParallelSearch() {
+        Controller controller = quietController();
+        Player ai = new AI(1, 4, new TerritoryEvaluator())
+            .create(WHITE, controller);
+        Move move = Move.mv(ai.myMove());
+        assertTrue(controller.board().isLegal(move));
+        controller.board().copy(trappedQueen());
+        controller.board().makeMove(Move.mv(ai.myMove()));
+        assertEquals(WHITE, controller.board().winner());
+    }
+
+    /** Tests that a search finds a move that traps Black's only queen. */
+    @Test
+    public void testSearchFindsWin() {
+        Board b = trappedQueen();
+        Search search = new Search(new TranspositionTable(1),
+                                   new TerritoryEvaluator());
+        search.setup(b, Long.MAX_VALUE, 0, 1);
+        search.run(Long.MAX_VALUE, 3);
+        assertEquals(Search.WINNING_VALUE, search.bestValue());
+        b.makeMove(search.bestMove());
+        assertEquals(WHITE, b.winner());
+    }
+
+    /** Tests that killer and history move ordering lets a search to a
+     *  fixed depth visit fewer nodes than one that tries moves in the
+     *  order generated, without changing the value found. */
+    @Test
+    public void testMoveOrdering() {
+        Random random = new Random(2);
+        int[] moves = new int[Board.MAX_MOVES];
+        Board b = new Board();
+        while (b.numMoves() < 30 && b.winner() == null) {
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[random.nextInt(n)]);
+        }
+        long[] nodes = new long[2];
+        int[] values = new int[2];
+        for (int mode = 0; mode < 2; mode += 1) {
+            Search search = new Search(new TranspositionTable(1),
+                                       new TerritoryEvaluator(), false,
+                                       mode == 1);
+            search.setup(b, Long.MAX_VALUE, 0, 1);
+            search.run(Long.MAX_VALUE, 2);
+            nodes[mode] = search.nodes();
+            values[mode] = search.bestValue();
+        }
+        assertEquals(values[0], values[1]);
+        assertTrue(nodes[1] < nodes[0]);
+    }
+
+    /** Tests that an MCTSPlayer returns legal moves from the initial
+     *  position and from one 40 moves in, and that it keeps the subtree
+     *  below its move when the game continues.  With the smallest tree
+     *  allowed, which has room for just one expansion of a node with the
+     *  most moves a position can have, it must clear its tree rather
+     *  than reuse it, and must be able to play a whole game. */
+    @Test
+    public void testMCTSPlayer() {
+        Controller controller = quietController();
+        MCTSPlayer player = (MCTSPlayer)
+            new MCTSPlayer(1, 1, new TerritoryEvaluator())
+            .create(WHITE, controller);
+        Board b = controller.board();
+        Move move = Move.mv(player.myMove());
+        assertTrue(b.isLegal(move));
+        int size = player.treeSize();
+        b.makeMove(move);
+        player.advanceRoot(b);
+        assertEquals(size, player.treeSize());
+        assertTrue(player.rootVisits() > 0);
+        player.advanceRoot(new Board());
+        assertEquals(1, player.treeSize());
+        assertEquals(0, player.rootVisits());
+
+        Random random = new Random(4);
+        int[] moves = new int[Board.MAX_MOVES];
+        b.init();
+        while (b.numMoves() < 40 && b.winner() == null) {
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[random.nextInt(n)]);
+        }
+        assertNull(b.winner());
+        assertEquals(WHITE, b.turn());
+        assertTrue(b.isLegal(Move.mv(player.myMove())));
+
+        Player smallest = new MCTSPlayer(0, 1, new TerritoryEvaluator());
+        controller = quietController();
+        player = (MCTSPlayer) smallest.create(WHITE, controller);
+        b = controller.board();
+        b.makeMove(Move.mv(player.myMove()));
+        player.advanceRoot(b);
+        assertEquals(1, player.treeSize());
+        assertNotNull(quietController().playGame(smallest, smallest,
+                                                  List.of(), 2_000));
+    }
+
+    /** Tests that an AI that ponders anticipates a reply to its move,
+     *  that when that reply is played its promoted ponder search returns
+     *  a legal move, and that stopThinking ends a ponder search. */
+    @Test
+    public void testPondering() {
+        Controller controller = quietController();
+        AI ai = (AI) new AI(1, 1, new TerritoryEvaluator(), null, true)
+            .create(WHITE, controller);
+        Board b = controller.board();
+        Move move = Move.mv(ai.myMove());
+        b.makeMove(move);
+        ai.moveMade(move);
+        Move reply = ai.ponderReply();
+        assertNotNull(reply);
+        assertTrue(b.isLegal(reply));
+        b.makeMove(reply);
+        ai.moveMade(reply);
+        move = Move.mv(ai.myMove());
+        assertTrue(b.isLegal(move));
+        b.makeMove(move);
+        ai.moveMade(move);
+        assertNotNull(ai.ponderReply());
+        ai.stopThinking();
+        assertNull(ai.ponderReply());
+    }
+
+    /** Tests that proof-number search agrees with exhaustive search on
+     *  small random positions in which the queens share a region, and
+     *  finds the winning move in a position won in one. */
+    @Test
+    public void testProofNumberSearch() {
+        Random random = new Random(5);
+        ProofNumberSearch solver = new ProofNumberSearch(1);
+        long deadline = System.nanoTime() + 60_000_000_000L;
+        for (int trial = 0; trial < 30; trial += 1) {
+            Board b = spearsOnly();
+            b.put(WHITE, Square.sq(3, 3));
+            b.put(BLACK, Square.sq(5, 4));
+            carve(b, random, 2, 2, 5, 4, 9);
+            Piece winner = solver.solve(b, deadline);
+            assertEquals(sideToMoveWins(b) ? WHITE : BLACK, winner);
+        }
+        Board b = trappedQueen();
+        assertEquals(WHITE, solver.solve(b, deadline));
+        b.makeMove(solver.bestMove());
+        assertEquals(WHITE, b.winner());
+    }
+
+    /** Return true iff the side to move on B wins, by exhaustive
+     *  search. */
+    private boolean sideToMoveWins(Board b) {
+        int[] moves = new int[Board.MAX_MOVES];
+        int n = b.generateMoves(b.turn(), moves);
+        for (int i = 0; i < n; i += 1) {
+            b.makeMove(moves[i]);
+            boolean lost = !sideToMoveWins(b);
+            b.undo();
+            if (lost) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Return a board on which every square holds a spear. */
+    private Board spearsOnly() {
+        Board b = new Board();
+        for (int i = 0; i < Bits.SQUARES; i += 1) {
+            b.put(SPEAR, Square.sq(i));
+        }
+        return b;
+    }
+
+    /** Replace the spears on up to N squares chosen by RANDOM in the
+     *  WIDTH x HEIGHT area of B with lower-left corner (COL, ROW) with
+     *  empty squares. */
+    private void carve(Board b, Random random, int col, int row,
+                       int width, int height, int n) {
+        for (int k = 0; k < n; k += 1) {
+            Square sq = Square.sq(col + random.nextInt(width),
+                                  row + random.nextInt(height));
+            if (b.get(sq) == SPEAR) {
+                b.put(EMPTY, sq);
+            }
+        }
+    }
+
+    /** Tests that a Search's statistics account for its work. */
+    @Test
+    public void testSearchStats() {
+        Search search = new Search(new TranspositionTable(1),
+                                   new TerritoryEvaluator());
+        search.setup(new Board(), Long.MAX_VALUE, 0, 1);
+        search.run(Long.MAX_VALUE, 2);
+        SearchStats stats = search.stats();
+        assertEquals(2, stats.completedDepth());
+        assertEquals(search.nodes(), stats.nodes());
+        assertEquals(stats.nodes(),
+                     stats.iterationNodes(1) + stats.iterationNodes(2));
+        assertTrue(stats.evaluations() > 0
+                   && stats.evaluations() < stats.nodes());
+        assertTrue(stats.cutoffs() > 0
+                   && stats.firstMoveCutoffs() <= stats.cutoffs());
+        assertTrue(stats.hits() <= stats.probes());
+        SearchStats total = new SearchStats();
+        total.add(stats);
+        total.add(stats);
+        assertEquals(2 * stats.nodes(), total.nodes());
+        assertEquals(stats.iterationNanos(2), total.iterationNanos(2));
+        long nodes = stats.nodes();
+        SearchStats snapshot = search.snapshot();
+        assertEquals(2, snapshot.completedDepth());
+        assertEquals(nodes, snapshot.nodes());
+        search.setup(new Board(), Long.MAX_VALUE, 0, 1);
+        assertEquals(0, search.stats().nodes());
+        assertEquals(0, search.snapshot().nodes());
+        assertEquals(nodes, snapshot.nodes());
+    }
+
+    /** Tests that an AI's statistics can be read while it searches, and
+     *  describe the search so far. */
+    @Test
+    public void testLiveSearchStats() throws Exception {
+        Controller controller = quietController();
+        AI ai = (AI) new AI().create(WHITE, controller);
+        assertEquals(0, ai.stats().nodes());
+        ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            Future<Long> seen = reader.submit(() -> {
+                    long nodes = 0;
+                    while (nodes == 0) {
+                        nodes = ai.stats().nodes();
+                        Thread.sleep(1);
+                    }
+                    return nodes;
+                });
+            ai.myMove();
+            long nodes = seen.get(10, TimeUnit.SECONDS);
+            assertTrue(nodes > 0 && nodes <= ai.stats().nodes());
+            assertTrue(ai.stats().completedDepth() > 0);
+        } finally {
+            reader.shutdownNow();
+        }
+    }
+
+    /** Tests that PVS with aspiration windows finds the same values as
+     *  plain alpha-beta, and a principal variation that starts with its
+     *  best move and can be played out. */
+    @Test
+    public void testPrincipalVariationSearch() {
+        Random random = new Random(7);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int trial = 0; trial < 4; trial += 1) {
+            Board b = new Board();
+            while (b.numMoves() < 30 && b.winner() == null) {
+                int n = b.generateMoves(b.turn(), moves);
+                b.makeMove(moves[random.nextInt(n)]);
+            }
+            if (b.winner() != null) {
+                continue;
+            }
+            int[] values = new int[2];
+            for (int mode = 0; mode < 2; mode += 1) {
+                Search search = new Search(new TranspositionTable(1),
+                                           new TerritoryEvaluator(),
+                                           mode == 1);
+                search.setup(b, Long.MAX_VALUE, 0, 1);
+                search.run(Long.MAX_VALUE, 3);
+                values[mode] = search.bestValue();
+                int[] pv = search.principalVariation();
+                assertTrue(pv.length > 0 && pv.length <= 3);
+                assertEquals(search.bestMove(), pv[0]);
+                Board line = new Board(b);
+                for (int move : pv) {
+                    assertTrue(line.isLegal(Move.mv(move)));
+                    line.makeMove(move);
+                }
+            }
+            assertEquals(values[0], values[1]);
+        }
+    }
+
+    /** Tests the geometry derived from the default board size. */
+    @Test
+    public void testDefaultGeometry() {
+        assertEquals(Board.DEFAULT_SIZE, Board.SIZE);
+        assertEquals(4 * 35 * 35, Board.MAX_MOVES);
+        assertEquals(-1L, Bits.ALL_LO);
+        assertEquals((1L << 36) - 1, Bits.ALL_HI);
+        assertTrue("j10".matches(Square.SQ));
+        assertFalse("k1".matches(Square.SQ));
+        assertFalse("a11".matches(Square.SQ));
+        assertEquals("a10", Square.sq(0).toString());
+        assertEquals("j1", Square.sq(Square.VALUE).toString());
+    }
+
+    /** Tests the check on the sizes given to --size.  Other sizes are
+     *  checked by 'make sizes', which needs a JVM per size. */
+    @Test
+    public void testBoardSizeOption() {
+        assertTrue(Main.validBoardSize("4"));
+        assertTrue(Main.validBoardSize("11"));
+        assertFalse(Main.validBoardSize("3"));
+        assertFalse(Main.validBoardSize("12"));
+        assertFalse(Main.validBoardSize("10000000000"));
+    }
+
+    /** Tests that perft counts from the move generator agree with those
+     *  from the Move iterator, with and without a table and in
+     *  parallel. */
+    @Test
+    public void testPerft() {
+        Board b = new Board();
+        assertEquals(2176, new Perft().count(b, 1));
+        Random random = new Random(11);
+        int[] moves = new int[Board.MAX_MOVES];
+        for (int i = 0; i < 30 && b.winner() == null; i += 1) {
+            int n = b.generateMoves(b.turn(), moves);
+            b.makeMove(moves[random.nextInt(n)]);
+        }
+        String before = b.toString();
+        long expected = Perft.iteratorCount(b, 3);
+        assertEquals(expected, new Perft().count(b, 3));
+        assertEquals(expected, new Perft(1).count(b, 3));
+        assertEquals(expected,
+                     new Perft(1).parallelCount(b, 3,
+                                                ForkJoinPool.commonPool()));
+        assertEquals(before, b.toString());
+    }
+
+    /** Tests the tournament's Elo arithmetic and SPRT, and that its
+     *  random openings are legal and reproducible. */
+    @Test
+    public void testTournament() {
+        assertEquals(0.5, Tournament.expectedScore(0), 1e-12);
+        assertEquals(100.0, Tournament.eloOf(Tournament.expectedScore(100)),
+                     1e-9);
+        assertEquals(0.0, Tournament.elo(10, 10), 1e-9);
+        assertTrue(Tournament.elo(15, 5) > 0);
+        double[] interval = Tournament.eloInterval(15, 5);
+        assertTrue(interval[0] < Tournament.elo(15, 5)
+                   && Tournament.elo(15, 5) < interval[1]);
+        assertEquals(0.0, Tournament.llr(0, 0, 0, 10), 1e-12);
+        assertTrue(Tournament.llr(600, 400, 0, 10) > Tournament.upperBound());
+        assertTrue(Tournament.llr(200, 300, 0, 10) < Tournament.lowerBound());
+        List<Move> opening = Tournament.randomOpening(new Random(3), 6);
+        assertEquals(opening, Tournament.randomOpening(new Random(3), 6));
+        Board b = new Board();
+        for (Move move : opening) {
+            assertTrue(b.isLegal(move));
+            b.makeMove(move);
+        }
+    }
+
+    /** Tests that the territory evaluator sees the initial position as
+     *  even except for contested squares (which favor the side to move),
+     *  and a queen sealed in a corner as lost ground. */
+    @Test
+    public void testTerritory() {
+        Evaluator eval = new TerritoryEvaluator();
+        Board b = new Board();
+        int even = eval.score(b);
+        assertTrue(even >= 0);
+        b.put(EMPTY, Square.sq("d10"));
+        b.put(BLACK, Square.sq("a10"));
+        for (String s : new String[] { "a8", "b8", "c8", "c9", "c10" }) {
+            b.put(SPEAR, Square.sq(s));
+        }
+        assertTrue(eval.score(b) > even + 100);
+        assertTrue(eval.create().score(b) == eval.score(b));
+    }
+
     @Test
     public void testMakeMove() {
         Board b = new Board();
@@ -171,6 +801,30 @@ public class UnitTest {
         assertTrue(b.get(sq2) == WHITE);
     }
 
+    /** Return a Controller, with no view and a reporter that discards
+     *  everything, for players under test. */
+    private Controller quietController() {
+        return new Controller(new NullView(), null,
+                              new Tournament.SilentReporter(),
+                              new AI(), new AI());
+    }
+
+    /** Return a position in which White, to move, has one queen, on e5,
+     *  and can win at once by trapping Black's only queen, on a10, which
+     *  spears on a9 and b10 already hem in. */
+    private Board trappedQueen() {
+        Board b = new Board();
+        for (String q : new String[] { "a4", "d1", "g1", "j4", "a7", "d10",
+                                       "g10", "j7" }) {
+            b.put(EMPTY, Square.sq(q));
+        }
+        b.put(BLACK, Square.sq("a10"));
+        b.put(SPEAR, Square.sq("a9"));
+        b.put(SPEAR, Square.sq("b10"));
+        b.put(WHITE, Square.sq("e5"));
+        return b;
+    }
+
 }
 
 
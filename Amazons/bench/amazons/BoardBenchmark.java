@@ -0,0 +1,94 @@
+package amazons;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Throughput of the Board operations and static evaluations that
+ *  dominate search time, on each position of the corpus (see
+ *  Positions).
+ *  @author Eileen Wang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark {
+
+    /** The phase of the game whose corpus position is measured. */
+    @Param({ Positions.OPENING, Positions.MIDDLEGAME, Positions.ENDGAME })
+    public String phase;
+
+    /** Load the position and its legal moves. */
+    @Setup
+    public void setup() {
+        _board = Positions.position(phase);
+        _count = _board.generateMoves(_board.turn(), _moves);
+    }
+
+    /** Enumerate the legal moves through the Move iterator. */
+    @Benchmark
+    public void legalMoves(Blackhole sink) {
+        Iterator<Move> moves = _board.legalMoves();
+        while (moves.hasNext()) {
+            sink.consume(moves.next());
+        }
+    }
+
+    /** Enumerate the legal moves as packed ints. */
+    @Benchmark
+    public int generateMoves() {
+        return _board.generateMoves(_board.turn(), _scratch);
+    }
+
+    /** Make and undo every legal move. */
+    @Benchmark
+    public long makeUndo() {
+        long hashes = 0;
+        for (int i = 0; i < _count; i += 1) {
+            _board.makeMove(_moves[i]);
+            hashes ^= _board.hash();
+            _board.undo();
+        }
+        return hashes;
+    }
+
+    /** Evaluate the position with the territory evaluator. */
+    @Benchmark
+    public int territoryScore() {
+        return _territory.score(_board);
+    }
+
+    /** Evaluate the position with the mobility evaluator. */
+    @Benchmark
+    public int mobilityScore() {
+        return _mobility.score(_board);
+    }
+
+    /** The position measured. */
+    private Board _board;
+    /** Its legal moves. */
+    private final int[] _moves = new int[Board.MAX_MOVES];
+    /** The number of legal moves. */
+    private int _count;
+    /** Room for the moves generated by generateMoves. */
+    private final int[] _scratch = new int[Board.MAX_MOVES];
+    /** Evaluators. */
+    private final Evaluator _territory = new TerritoryEvaluator(),
+        _mobility = new MobilityEvaluator();
+
+}
@@ -0,0 +1,55 @@
+package amazons;
+
+import java.util.Random;
+
+/** The fixed corpus of positions on which the benchmarks run.  Each
+ *  phase of the game is represented by a position reached by random
+ *  play from a fixed seed, so every run measures exactly the same
+ *  positions.
+ *  @author Eileen Wang
+ */
+final class Positions {
+
+    /** Names of the phases, as used in the benchmarks' @Param lists. */
+    static final String OPENING = "opening", MIDDLEGAME = "middlegame",
+        ENDGAME = "endgame";
+
+    /** Return a new Board holding the corpus position for PHASE. */
+    static Board position(String phase) {
+        switch (phase) {
+        case OPENING:
+            return randomPosition(OPENING_PLIES);
+        case MIDDLEGAME:
+            return randomPosition(MIDDLEGAME_PLIES);
+        case ENDGAME:
+            return randomPosition(ENDGAME_PLIES);
+        default:
+            throw Utils.error("unknown phase: %s", phase);
+        }
+    }
+
+    /** Return the first position reached after PLIES random moves by a
+     *  game (played from seed SEED, SEED + 1, ...) that lasts that long
+     *  without ending. */
+    private static Board randomPosition(int plies) {
+        int[] moves = new int[Board.MAX_MOVES];
+        for (long seed = SEED; ; seed += 1) {
+            Random random = new Random(seed);
+            Board board = new Board();
+            while (board.numMoves() < plies && board.winner() == null) {
+                int n = board.generateMoves(board.turn(), moves);
+                board.makeMove(moves[random.nextInt(n)]);
+            }
+            if (board.winner() == null) {
+                return board;
+            }
+        }
+    }
+
+    /** Seed of the first game tried for each position. */
+    private static final long SEED = 61;
+    /** Number of moves made before each phase's position. */
+    private static final int OPENING_PLIES = 4, MIDDLEGAME_PLIES = 30,
+        ENDGAME_PLIES = 60;
+
+}
@@ -0,0 +1,67 @@
+package amazons;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Time taken by the AI's search to choose a move in each position of
+ *  the corpus (see Positions).  The search runs to a fixed depth from
+ *  an empty transposition table, with no clock, so that every
+ *  invocation does exactly the same work.
+ *  @author Eileen Wang
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+    /** The phase of the game whose corpus position is searched. */
+    @Param({ Positions.OPENING, Positions.MIDDLEGAME, Positions.ENDGAME })
+    public String phase;
+
+    /** The depth of the search. */
+    @Param({ "1", "2" })
+    public int depth;
+
+    /** Load the position. */
+    @Setup
+    public void setup() {
+        _board = Positions.position(phase);
+    }
+
+    /** Search the position to the given depth and return the move
+     *  chosen. */
+    @Benchmark
+    public int findMove() {
+        _table.clear();
+        _search.setup(_board, Long.MAX_VALUE, 0, 1);
+        _search.run(Long.MAX_VALUE, depth);
+        return _search.bestMove();
+    }
+
+    /** Size of the transposition table, in megabytes. */
+    private static final int HASH_MEGABYTES = 16;
+
+    /** The position searched. */
+    private Board _board;
+    /** The table used by the search. */
+    private final TranspositionTable _table =
+        new TranspositionTable(HASH_MEGABYTES);
+    /** The search. */
+    private final Search _search =
+        new Search(_table, new TerritoryEvaluator());
+
+}